@@ -0,0 +1,184 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.IModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.IResolver;
+import com.shapesecurity.bandolier.es2018.loader.IResourceLoader;
+import com.shapesecurity.functional.data.Maybe;
+import com.shapesecurity.shift.es2018.ast.Script;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Bundles many entry points independently, each to its own output file, a bounded number at a time. All bundles go
+ * through the same resolver and loader, so their caches are shared: a module imported by several entry points is read,
+ * resolved and (given a caching loader) parsed once.
+ */
+public abstract class BatchBundler {
+
+	private BatchBundler() {
+
+	}
+
+	/**
+	 * @param options options object
+	 * @param targets the output path of each entry point, bundled in this order
+	 * @param resolver how to resolve paths; must be thread-safe if jobs is more than one
+	 * @param loader how to load modules; must be thread-safe if jobs is more than one
+	 * @param bundlers makes a bundler for each entry point
+	 * @param jobs how many entry points to bundle at once
+	 * @return the failure of each entry point that could not be bundled or written, in the order of the targets;
+	 * the other bundles are written regardless
+	 * @throws InterruptedException when interrupted while waiting for the bundles
+	 */
+	@Nonnull
+	public static Map<Path, Exception> bundleEach(@Nonnull BundlerOptions options, @Nonnull Map<Path, Path> targets, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, @Nonnull Supplier<IModuleBundler> bundlers, int jobs) throws InterruptedException {
+		return bundleEach(options, targets, resolver, loader, bundlers, jobs, Maybe.empty());
+	}
+
+	/**
+	 * As {@link #bundleEach(BundlerOptions, Map, IResolver, IResourceLoader, Supplier, int)}, taking bundles whose
+	 * dependencies have not changed from the given cache.
+	 */
+	@Nonnull
+	public static Map<Path, Exception> bundleEach(@Nonnull BundlerOptions options, @Nonnull Map<Path, Path> targets, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, @Nonnull Supplier<IModuleBundler> bundlers, int jobs, @Nonnull Maybe<BundleCache> cache) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, jobs));
+		Map<Path, Future<Void>> results = new LinkedHashMap<>();
+		try {
+			for (Map.Entry<Path, Path> target : targets.entrySet()) {
+				results.put(target.getKey(), executor.submit(() -> {
+					bundleTo(options, target.getKey(), target.getValue(), resolver, loader, bundlers.get(), cache);
+					return null;
+				}));
+			}
+			Map<Path, Exception> failures = new LinkedHashMap<>();
+			for (Map.Entry<Path, Future<Void>> result : results.entrySet()) {
+				try {
+					result.getValue().get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						failures.put(result.getKey(), (Exception) e.getCause());
+					} else {
+						throw new RuntimeException(e.getCause());
+					}
+				}
+			}
+			return failures;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// the output file is only created once bundling has succeeded, and is replaced in one step once the bundle has been
+	// written in full next to it
+	private static void bundleTo(@Nonnull BundlerOptions options, @Nonnull Path entry, @Nonnull Path output, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, @Nonnull IModuleBundler bundler, @Nonnull Maybe<BundleCache> cache) throws Exception {
+		Maybe<String> code = Maybe.empty();
+		Maybe<Script> script = Maybe.empty();
+		if (cache.isJust()) {
+			code = Maybe.of(cache.fromJust().bundle(options, entry, resolver, loader, bundler));
+		} else {
+			script = Maybe.of(Bundler.bundle(options, entry.toAbsolutePath(), resolver, loader, bundler));
+		}
+		Path directory = output.toAbsolutePath().getParent();
+		if (directory != null) {
+			Files.createDirectories(directory);
+		}
+		// not Files.createTempFile, whose owner-only permissions the bundle would keep
+		Path temporary = output.resolveSibling("." + output.getFileName() + "." + UUID.randomUUID() + ".tmp");
+		try {
+			try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				if (code.isJust()) {
+					writer.write(code.fromJust());
+				} else {
+					StreamingCodeGen.codeGen(script.fromJust(), false, writer);
+				}
+				writer.write(System.lineSeparator());
+			}
+			try {
+				Files.move(temporary, output, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Reads a manifest listing one entry point per line, optionally followed by a tab and the path to write its bundle
+	 * to. Blank lines and lines starting with # are ignored, and relative paths are relative to the manifest's
+	 * directory.
+	 * @param manifest path to the manifest
+	 * @param outDir where bundles without an explicit output path go, see {@link #outputFor(Path, Path)}
+	 * @return the output path of each entry point, in the order listed
+	 * @throws IOException when the manifest cannot be read, or lists an entry point without an output path and no
+	 * output directory is given
+	 */
+	@Nonnull
+	public static Map<Path, Path> readManifest(@Nonnull Path manifest, @Nonnull Maybe<Path> outDir) throws IOException {
+		Path base = manifest.toAbsolutePath().getParent();
+		Map<Path, Path> targets = new LinkedHashMap<>();
+		List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+		for (int i = 0; i < lines.size(); ++i) {
+			String line = lines.get(i).trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			int tab = line.indexOf('\t');
+			Path entry = base.resolve(tab < 0 ? line : line.substring(0, tab).trim()).normalize();
+			if (tab >= 0) {
+				targets.put(entry, base.resolve(line.substring(tab + 1).trim()).normalize());
+			} else if (outDir.isJust()) {
+				targets.put(entry, outputFor(entry, outDir.fromJust()));
+			} else {
+				throw new IOException(manifest + ":" + (i + 1) + ": no output path for " + entry + " and no output directory");
+			}
+		}
+		return targets;
+	}
+
+	/**
+	 * @return where the bundle of the given entry point goes in the given directory: a file of the same name
+	 */
+	@Nonnull
+	public static Path outputFor(@Nonnull Path entry, @Nonnull Path outDir) {
+		return outDir.resolve(entry.getFileName().toString());
+	}
+
+	/**
+	 * @return the output paths that more than one entry point would be written to
+	 */
+	@Nonnull
+	public static List<Path> conflictingOutputs(@Nonnull Map<Path, Path> targets) {
+		Set<Path> seen = new HashSet<>();
+		Set<Path> conflicts = new LinkedHashSet<>();
+		for (Path output : targets.values()) {
+			Path normalized = output.toAbsolutePath().normalize();
+			if (!seen.add(normalized)) {
+				conflicts.add(normalized);
+			}
+		}
+		return new ArrayList<>(conflicts);
+	}
+}
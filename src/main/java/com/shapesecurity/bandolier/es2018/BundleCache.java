@@ -0,0 +1,302 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.IModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.ContentHash;
+import com.shapesecurity.bandolier.es2018.loader.IResolver;
+import com.shapesecurity.bandolier.es2018.loader.IResourceLoader;
+import com.shapesecurity.bandolier.es2018.loader.ModuleLoaderException;
+import com.shapesecurity.functional.data.Maybe;
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.codegen.CodeGen;
+import com.shapesecurity.shift.es2018.parser.JsError;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists generated bundles in a cache directory, so that rebuilding an entry point whose dependencies have not
+ * changed costs only reading and hashing its files. There is one entry per entry point, options (see
+ * {@link BundlerOptions#outputFingerprint()}) and bundler class. Along with the code, an entry records the content hash
+ * of every file loaded for the bundle and every import resolution made; it is used only if all files still have the
+ * same content and all imports still resolve to the same files, and is replaced by the next build otherwise.
+ *
+ * Like {@link com.shapesecurity.bandolier.es2018.loader.DiskModuleCachingLoader}, the cache is best-effort and entries
+ * are written atomically. Entries are stored under a directory named for the format and bandolier versions.
+ */
+public class BundleCache {
+
+	private static final int FORMAT_VERSION = 1;
+
+	@Nonnull
+	private static final String BANDOLIER_VERSION = bandolierVersion();
+
+	@Nonnull
+	private final Path directory;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public BundleCache(@Nonnull Path cacheDirectory) {
+		this.directory = cacheDirectory.resolve("bundles-v" + FORMAT_VERSION + "-bandolier-" + BANDOLIER_VERSION);
+	}
+
+	@Nonnull
+	private static String bandolierVersion() {
+		try (InputStream in = BundleCache.class.getResourceAsStream("/META-INF/maven/com.shapesecurity.bandolier/es2018/pom.properties")) {
+			if (in != null) {
+				Properties properties = new Properties();
+				properties.load(in);
+				String version = properties.getProperty("version");
+				if (version != null) {
+					return version;
+				}
+			}
+		} catch (IOException ignored) {
+		}
+		return "unknown";
+	}
+
+	@Nonnull
+	public Path getDirectory() {
+		return this.directory;
+	}
+
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Returns the code of the bundle of the given entry point, as {@link CodeGen#codeGen} generates it, from the cache
+	 * if possible and otherwise by bundling it and caching the result.
+	 * @param options options object
+	 * @param filePath path to the entry point module
+	 * @param resolver how to resolve paths
+	 * @param loader how to load modules
+	 * @param bundler how to bundle
+	 * @return the code of the bundle
+	 * @throws ModuleLoaderException when bundling fails
+	 */
+	@Nonnull
+	public String bundle(@Nonnull BundlerOptions options, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, @Nonnull IModuleBundler bundler) throws ModuleLoaderException {
+		Path entryPath = filePath.toAbsolutePath().normalize();
+		String key = entryPath + "\n" + options.outputFingerprint() + "\n" + bundler.getClass().getName();
+		Path entry = this.directory.resolve(ContentHash.of(key) + ".bundle");
+		try {
+			Maybe<String> code = read(Files.readAllBytes(entry), key, resolver, loader);
+			if (code.isJust()) {
+				this.hits.incrementAndGet();
+				return code.fromJust();
+			}
+		} catch (NoSuchFileException ignored) {
+		} catch (IOException ignored) {
+			// corrupt or truncated entry, overwritten below
+		}
+		this.misses.incrementAndGet();
+		RecordingResolver recordingResolver = new RecordingResolver(resolver);
+		RecordingLoader recordingLoader = new RecordingLoader(loader);
+		String code = CodeGen.codeGen(Bundler.bundle(options, entryPath, recordingResolver, recordingLoader, bundler));
+		try {
+			write(entry, encode(key, recordingLoader.hashes, recordingResolver.resolutions, code));
+		} catch (IOException ignored) {
+		}
+		return code;
+	}
+
+	// the cached code, if the entry is for the given key and is still up to date
+	@Nonnull
+	private static Maybe<String> read(@Nonnull byte[] data, @Nonnull String key, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		if (!readString(in).equals(key)) {
+			return Maybe.empty();
+		}
+		int files = in.readInt();
+		for (int i = 0; i < files; ++i) {
+			Path path = Paths.get(readString(in));
+			String hash = readString(in);
+			String source;
+			try {
+				source = loader.loadResource(path);
+			} catch (IOException e) {
+				return Maybe.empty();
+			}
+			if (!ContentHash.of(source).equals(hash)) {
+				return Maybe.empty();
+			}
+		}
+		int resolutions = in.readInt();
+		for (int i = 0; i < resolutions; ++i) {
+			Path root = Paths.get(readString(in));
+			String specifier = readString(in);
+			if (!resolver.resolve(root, specifier).equals(readString(in))) {
+				return Maybe.empty();
+			}
+		}
+		return Maybe.of(readString(in));
+	}
+
+	@Nonnull
+	private static byte[] encode(@Nonnull String key, @Nonnull Map<String, String> hashes, @Nonnull Map<Resolution, String> resolutions, @Nonnull String code) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		writeString(out, key);
+		out.writeInt(hashes.size());
+		for (Map.Entry<String, String> file : hashes.entrySet()) {
+			writeString(out, file.getKey());
+			writeString(out, file.getValue());
+		}
+		out.writeInt(resolutions.size());
+		for (Map.Entry<Resolution, String> resolution : resolutions.entrySet()) {
+			writeString(out, resolution.getKey().root);
+			writeString(out, resolution.getKey().specifier);
+			writeString(out, resolution.getValue());
+		}
+		writeString(out, code);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	// DataOutputStream.writeUTF is limited to 64K, too little for code
+	private static void writeString(@Nonnull DataOutputStream out, @Nonnull String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	@Nonnull
+	private static String readString(@Nonnull DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > in.available()) {
+			throw new IOException("Invalid string length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void write(@Nonnull Path entry, @Nonnull byte[] data) throws IOException {
+		Files.createDirectories(entry.getParent());
+		Path temporary = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temporary, data);
+			try {
+				Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private static final class Resolution {
+		@Nonnull
+		final String root;
+		@Nonnull
+		final String specifier;
+
+		Resolution(@Nonnull String root, @Nonnull String specifier) {
+			this.root = root;
+			this.specifier = specifier;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Resolution)) {
+				return false;
+			}
+			Resolution resolution = (Resolution) o;
+			return this.root.equals(resolution.root) && this.specifier.equals(resolution.specifier);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.root.hashCode() + this.specifier.hashCode();
+		}
+	}
+
+	private static final class RecordingResolver implements IResolver {
+		@Nonnull
+		private final IResolver resolver;
+		@Nonnull
+		final Map<Resolution, String> resolutions = new ConcurrentHashMap<>();
+
+		RecordingResolver(@Nonnull IResolver resolver) {
+			this.resolver = resolver;
+		}
+
+		@Nonnull
+		@Override
+		public String resolve(@Nonnull Path root, @Nonnull String path) {
+			String resolved = this.resolver.resolve(root, path);
+			this.resolutions.put(new Resolution(root.toString(), path), resolved);
+			return resolved;
+		}
+
+		@Override
+		public void invalidate(@Nonnull Path path) {
+			this.resolver.invalidate(path);
+		}
+	}
+
+	// records the content hash of every file loaded, by path
+	private static final class RecordingLoader implements IResourceLoader {
+		@Nonnull
+		private final IResourceLoader loader;
+		@Nonnull
+		final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+		RecordingLoader(@Nonnull IResourceLoader loader) {
+			this.loader = loader;
+		}
+
+		@Nonnull
+		@Override
+		public Boolean exists(@Nonnull Path path) {
+			return this.loader.exists(path);
+		}
+
+		@Nonnull
+		@Override
+		public String loadResource(@Nonnull Path path) throws IOException {
+			String source = this.loader.loadResource(path);
+			this.hashes.put(path.toString(), ContentHash.of(source));
+			return source;
+		}
+
+		@Nonnull
+		@Override
+		public Module loadModule(@Nonnull Path path) throws IOException, JsError {
+			this.loadResource(path);
+			return this.loader.loadModule(path);
+		}
+
+		@Override
+		public void invalidate(@Nonnull Path path) {
+			this.loader.invalidate(path);
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.PiercedModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.DirectorySnapshot;
+import com.shapesecurity.bandolier.es2018.loader.FileLoader;
+import com.shapesecurity.bandolier.es2018.loader.IResourceLoader;
+import com.shapesecurity.bandolier.es2018.loader.ModuleCache;
+import com.shapesecurity.bandolier.es2018.loader.ModuleCachingLoader;
+import com.shapesecurity.bandolier.es2018.loader.NodeResolver;
+import com.shapesecurity.bandolier.es2018.loader.NodeResolverCache;
+import com.shapesecurity.bandolier.es2018.loader.ResourceCache;
+import com.shapesecurity.functional.data.Maybe;
+import com.shapesecurity.shift.es2018.ast.Script;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-running bundler that accepts requests over loopback TCP, so that JVM startup and warm-up are paid once rather
+ * than per bundle. Parsed modules are kept in a bounded {@link ModuleCache}, least recently used first out; since it is
+ * keyed by content, files changed between requests are simply parsed again. Everything else that depends on the file
+ * system (file contents, directory listings, resolution results) is looked up afresh for each request.
+ *
+ * The daemon bundles any file it can read, so clients must prove they can read its token file, which only the user
+ * running the daemon can. The token is written when the daemon starts and deleted when it is closed.
+ *
+ * The protocol is line based and UTF-8 encoded. A client sends the token on one line and its request on the next,
+ * either "shutdown" or the name of the options to use ("default", "node" or "spec"), a space and the absolute path of
+ * the entry point. The daemon answers with "OK" followed by the bundle, a line break and a trailer line, "END", the
+ * length of the bundle in characters and the timings, or with "ERROR" and a message, and closes the connection. Should
+ * bundling fail once the bundle is being sent, the trailer is a line with "ERROR" and a message instead; clients must
+ * discard any bundle without a matching "END" trailer.
+ */
+public class BundleDaemon implements Closeable {
+
+	private static final String SHUTDOWN = "shutdown";
+	// of module source, about a tenth of what the parsed modules take
+	public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+
+	@Nonnull
+	private final ServerSocket server;
+	@Nonnull
+	private final ModuleCache cache;
+	@Nonnull
+	private final String token;
+	@Nonnull
+	private final Path tokenFile;
+	@Nonnull
+	private final ExecutorService workers;
+	@Nonnull
+	private final PrintStream log;
+
+	/**
+	 * @param port the port to listen on, or 0 for any free port
+	 * @param threads how many requests to handle at once
+	 * @param cacheBytes how much module source to keep the parsed modules of, see {@link ModuleCache#ModuleCache(long)}
+	 * @param tokenFile where to write the token clients must send, readable only by the current user; replaced if it
+	 *                  exists
+	 * @param log where to report each request and its timings
+	 * @throws IOException when the port cannot be bound or the token file cannot be written
+	 */
+	public BundleDaemon(int port, int threads, long cacheBytes, @Nonnull Path tokenFile, @Nonnull PrintStream log) throws IOException {
+		byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder token = new StringBuilder();
+		for (byte b : bytes) {
+			token.append(String.format("%02x", b));
+		}
+		this.token = token.toString();
+		this.tokenFile = tokenFile.toAbsolutePath();
+		writeToken(this.tokenFile, this.token);
+		this.cache = new ModuleCache(cacheBytes);
+		this.server = new ServerSocket();
+		try {
+			this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		} catch (IOException e) {
+			Files.deleteIfExists(this.tokenFile);
+			throw e;
+		}
+		this.workers = Executors.newFixedThreadPool(threads);
+		this.log = log;
+	}
+
+	/**
+	 * @param port the daemon's port
+	 * @return where a daemon started from the command line keeps its token, in the user's home directory
+	 */
+	@Nonnull
+	public static Path defaultTokenFile(int port) {
+		return Paths.get(System.getProperty("user.home"), ".bandolier", "daemon-" + port + ".token");
+	}
+
+	/**
+	 * @param tokenFile a daemon's token file
+	 * @return the token to send to the daemon
+	 * @throws IOException when the file cannot be read
+	 */
+	@Nonnull
+	public static String readToken(@Nonnull Path tokenFile) throws IOException {
+		return new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim();
+	}
+
+	// created with owner-only permissions from the start, so that the token is never readable by anyone else
+	private static void writeToken(@Nonnull Path tokenFile, @Nonnull String token) throws IOException {
+		Path directory = tokenFile.getParent();
+		boolean posix = tokenFile.getFileSystem().supportedFileAttributeViews().contains("posix");
+		if (!Files.exists(directory)) {
+			if (posix) {
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			} else {
+				Files.createDirectories(directory);
+			}
+		}
+		Files.deleteIfExists(tokenFile);
+		if (posix) {
+			Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} else {
+			File file = Files.createFile(tokenFile).toFile();
+			if (!(file.setReadable(false, false) && file.setReadable(true, true) && file.setWritable(false, false) && file.setWritable(true, true))) {
+				Files.delete(tokenFile);
+				throw new IOException("Cannot restrict access to " + tokenFile);
+			}
+		}
+		Files.write(tokenFile, token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public int getPort() {
+		return this.server.getLocalPort();
+	}
+
+	@Nonnull
+	public ModuleCache getCache() {
+		return this.cache;
+	}
+
+	/**
+	 * Accepts requests until the daemon is closed or a client asks it to shut down.
+	 * @throws IOException when accepting a connection fails
+	 */
+	public void serve() throws IOException {
+		while (!this.server.isClosed()) {
+			Socket socket;
+			try {
+				socket = this.server.accept();
+			} catch (SocketException e) {
+				// closed while waiting
+				break;
+			}
+			this.workers.execute(() -> this.handle(socket));
+		}
+		this.workers.shutdown();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.server.close();
+		this.workers.shutdown();
+		Files.deleteIfExists(this.tokenFile);
+	}
+
+	private void handle(@Nonnull Socket socket) {
+		try (Socket s = socket) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+			Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+			String token = in.readLine();
+			if (token == null) {
+				return;
+			}
+			if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), this.token.getBytes(StandardCharsets.UTF_8))) {
+				this.log.println("Rejected a request with a wrong token");
+				out.write("ERROR Wrong token\n");
+				out.flush();
+				return;
+			}
+			String request = in.readLine();
+			if (request == null) {
+				return;
+			}
+			if (request.equals(SHUTDOWN)) {
+				out.write("OK\n");
+				out.flush();
+				this.close();
+				return;
+			}
+			int space = request.indexOf(' ');
+			Maybe<BundlerOptions> options = space < 0 ? Maybe.empty() : optionsNamed(request.substring(0, space));
+			if (options.isNothing()) {
+				out.write("ERROR Invalid request: " + request + "\n");
+				out.flush();
+				return;
+			}
+			Path target = Paths.get(request.substring(space + 1));
+			CountingWriter bundle = new CountingWriter(out);
+			try {
+				this.bundle(options.fromJust(), target, out, bundle);
+			} catch (Exception e) {
+				this.log.println(target + ": " + e.getMessage());
+				// once the bundle is under way, the error takes the place of the trailer
+				String error = "ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ');
+				out.write(bundle.sent ? "\n" + error : error + "\n");
+			}
+			out.flush();
+		} catch (IOException e) {
+			this.log.println("Failed to answer request: " + e.getMessage());
+		}
+	}
+
+	private void bundle(@Nonnull BundlerOptions options, @Nonnull Path target, @Nonnull Writer out, @Nonnull CountingWriter bundle) throws Exception {
+		long start = System.nanoTime();
+		long parsedBefore = this.cache.getMissCount();
+		long reusedBefore = this.cache.getHitCount();
+		// files may have changed since the last request, so only the parse cache is carried over
+		IResourceLoader loader = new ModuleCachingLoader(new FileLoader(new ResourceCache(), new DirectorySnapshot()), this.cache);
+		Script script = Bundler.bundle(options, target, new NodeResolver(loader, new NodeResolverCache()), loader, new PiercedModuleBundler());
+		long bundled = System.nanoTime();
+		out.write("OK\n");
+		bundle.sent = true;
+		StreamingCodeGen.codeGen(script, false, bundle);
+		long written = System.nanoTime();
+		String timings = "bundle " + millis(bundled - start) + "ms, codegen " + millis(written - bundled) + "ms, total "
+			+ millis(written - start) + "ms; parsed " + (this.cache.getMissCount() - parsedBefore) + ", reused "
+			+ (this.cache.getHitCount() - reusedBefore);
+		out.write("\nEND " + bundle.count + " " + timings);
+		this.log.println(target + ": " + timings);
+	}
+
+	// counts what is written through it, without closing or flushing the underlying writer
+	private static final class CountingWriter extends Writer {
+		@Nonnull
+		private final Writer out;
+		long count = 0;
+		// whether the response has started
+		boolean sent = false;
+
+		CountingWriter(@Nonnull Writer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(@Nonnull char[] buffer, int offset, int length) throws IOException {
+			this.out.write(buffer, offset, length);
+			this.count += length;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	@Nonnull
+	public static Maybe<BundlerOptions> optionsNamed(@Nonnull String name) {
+		switch (name) {
+			case "default":
+				return Maybe.of(BundlerOptions.DEFAULT_OPTIONS);
+			case "node":
+				return Maybe.of(BundlerOptions.NODE_OPTIONS);
+			case "spec":
+				return Maybe.of(BundlerOptions.SPEC_OPTIONS);
+			default:
+				return Maybe.empty();
+		}
+	}
+
+	/**
+	 * Asks a daemon on this machine to bundle an entry point.
+	 * @param port the daemon's port
+	 * @param token the daemon's token, see {@link #readToken(Path)}
+	 * @param options the name of the options to use, see {@link #optionsNamed(String)}
+	 * @param target the entry point; made absolute, since the daemon's working directory may differ
+	 * @param out where to write the bundle, followed by a line break
+	 * @return the daemon's timings
+	 * @throws IOException when the daemon cannot be reached or reports an error, including when the bundle written to
+	 * out is incomplete
+	 */
+	@Nonnull
+	public static String request(int port, @Nonnull String token, @Nonnull String options, @Nonnull Path target, @Nonnull Writer out) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			Writer request = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			request.write(token + "\n" + options + " " + target.toAbsolutePath().normalize() + "\n");
+			request.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			String status = in.readLine();
+			if (status == null || !status.equals("OK")) {
+				throw new IOException(status == null ? "No response from daemon" : status);
+			}
+			StringBuilder trailer = new StringBuilder();
+			long length = copyAllButLastLine(in, out, trailer);
+			if (trailer.indexOf("ERROR ") == 0) {
+				throw new IOException(trailer.toString());
+			}
+			String[] parts = trailer.toString().split(" ", 3);
+			// the line break ending the bundle is copied with it
+			if (parts.length != 3 || !parts[0].equals("END") || !parts[1].equals(String.valueOf(length - 1))) {
+				throw new IOException("Incomplete response from daemon");
+			}
+			return parts[2];
+		}
+	}
+
+	/**
+	 * Asks a daemon on this machine to stop once the requests it is handling are done.
+	 * @param port the daemon's port
+	 * @param token the daemon's token, see {@link #readToken(Path)}
+	 * @throws IOException when the daemon cannot be reached or refuses the request
+	 */
+	public static void shutdown(int port, @Nonnull String token) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			Writer request = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			request.write(token + "\n" + SHUTDOWN + "\n");
+			request.flush();
+			String status = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+			if (status == null || !status.equals("OK")) {
+				throw new IOException(status == null ? "No response from daemon" : status);
+			}
+		}
+	}
+
+	// streams the bundle through as it arrives, holding back only what follows the last line break seen so far, which is
+	// left in pending; returns how many characters were copied
+	private static long copyAllButLastLine(@Nonnull Reader in, @Nonnull Writer out, @Nonnull StringBuilder pending) throws IOException {
+		char[] buffer = new char[1 << 14];
+		long copied = 0;
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			pending.append(buffer, 0, read);
+			int lineEnd = pending.lastIndexOf("\n");
+			if (lineEnd >= 0) {
+				out.append(pending, 0, lineEnd + 1);
+				pending.delete(0, lineEnd + 1);
+				copied += lineEnd + 1;
+			}
+		}
+		out.flush();
+		return copied;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.IModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.BundleLimitException;
+import com.shapesecurity.bandolier.es2018.loader.IResolver;
+import com.shapesecurity.bandolier.es2018.loader.IResourceLoader;
+import com.shapesecurity.bandolier.es2018.loader.ModuleLoaderException;
+import com.shapesecurity.functional.data.ImmutableList;
+import com.shapesecurity.functional.data.Maybe;
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.ast.Script;
+
+import javax.annotation.Nonnull;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bundles one entry point repeatedly, reusing work between builds. The session remembers every module of the graph as
+ * parsed and as rewritten by the resolver; after {@link #rebundle(Collection)} only the changed files are reloaded and
+ * reparsed, and only modules whose imports now resolve differently are rewritten. Modules that are unchanged are passed
+ * to the bundler as the same instances as before.
+ *
+ * Sessions are not thread-safe.
+ */
+public class BundleSession {
+
+	private static final class Entry {
+		// as loaded, before import paths are resolved
+		@Nonnull
+		final Module parsed;
+		@Nonnull
+		final Module rewritten;
+
+		Entry(@Nonnull Module parsed, @Nonnull Module rewritten) {
+			this.parsed = parsed;
+			this.rewritten = rewritten;
+		}
+	}
+
+	@Nonnull
+	private final BundlerOptions options;
+	@Nonnull
+	private final String entry;
+	@Nonnull
+	private final IResolver resolver;
+	@Nonnull
+	private final IResourceLoader loader;
+	@Nonnull
+	private final IModuleBundler bundler;
+	@Nonnull
+	private final ImportResolvingRewriter rewriter;
+
+	@Nonnull
+	private final Map<String, Entry> entries = new HashMap<>();
+	// changes not yet reflected in a successful build
+	@Nonnull
+	private final Set<String> changed = new HashSet<>();
+	@Nonnull
+	private Map<String, Module> modules = Collections.emptyMap();
+	@Nonnull
+	private Maybe<Script> script = Maybe.empty();
+	private int parseCount = 0;
+
+	public BundleSession(@Nonnull BundlerOptions options, @Nonnull Path entry, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, @Nonnull IModuleBundler bundler) {
+		this.options = options;
+		this.entry = entry.toAbsolutePath().normalize().toString();
+		this.resolver = resolver;
+		this.loader = loader;
+		this.bundler = bundler;
+		this.rewriter = new ImportResolvingRewriter(resolver);
+	}
+
+	/**
+	 * @return the bundle, built on the first call and after any changes
+	 * @throws ModuleLoaderException when a module fails to load or the bundler fails; the session can be rebundled
+	 * once the cause is fixed
+	 */
+	@Nonnull
+	public Script bundle() throws ModuleLoaderException {
+		if (this.script.isJust() && this.changed.isEmpty()) {
+			return this.script.fromJust();
+		}
+		Map<String, Module> modules = this.loadGraph();
+		this.options.limits.check(this.entry);
+		Script script;
+		try {
+			script = this.bundler.bundleEntrypoint(this.options, this.entry, modules);
+		} catch (BundleLimitException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ModuleLoaderException(this.entry, e);
+		}
+		this.modules = modules;
+		this.script = Maybe.of(script);
+		this.changed.clear();
+		return script;
+	}
+
+	/**
+	 * Rebuilds the bundle after the given files were changed, added or removed.
+	 * @param changedPaths the files that changed since the last build
+	 * @return the new bundle
+	 * @throws ModuleLoaderException see {@link #bundle()}
+	 */
+	@Nonnull
+	public Script rebundle(@Nonnull Collection<Path> changedPaths) throws ModuleLoaderException {
+		for (Path path : changedPaths) {
+			path = path.toAbsolutePath().normalize();
+			this.loader.invalidate(path);
+			this.resolver.invalidate(path);
+			this.changed.add(path.toString());
+		}
+		return this.bundle();
+	}
+
+	/**
+	 * @return the modules of the last successful build, in the order they were passed to the bundler
+	 */
+	@Nonnull
+	public Map<String, Module> getModules() {
+		return Collections.unmodifiableMap(this.modules);
+	}
+
+	/**
+	 * @return how many modules have been parsed over the lifetime of the session
+	 */
+	public int getParseCount() {
+		return this.parseCount;
+	}
+
+	// Visits the graph in the same breadth-first order as Bundler.loadDependencies, so the bundler sees the same map.
+	// Only the sources reloaded for this build count towards the options' limit on source.
+	@Nonnull
+	private Map<String, Module> loadGraph() throws ModuleLoaderException {
+		Map<String, Module> graph = new LinkedHashMap<>();
+		Map<String, Entry> visited = new HashMap<>();
+		LinkedList<String> toLoad = new LinkedList<>();
+		AtomicLong sourceBytes = new AtomicLong();
+		this.options.limits.checkModule(this.entry, 1);
+		visited.put(this.entry, this.load(this.entry, sourceBytes));
+		graph.put(this.entry, visited.get(this.entry).rewritten);
+		toLoad.add(this.entry);
+		while (!toLoad.isEmpty()) {
+			String root = toLoad.remove();
+			for (String dependency : ModuleHelper.getModuleDependencies(graph.get(root))) {
+				if (!graph.containsKey(dependency)) {
+					this.options.limits.checkModule(dependency, graph.size() + 1);
+					Entry entry = this.load(dependency, sourceBytes);
+					visited.put(dependency, entry);
+					graph.put(dependency, entry.rewritten);
+					toLoad.add(dependency);
+				}
+			}
+		}
+		// modules that are no longer imported are forgotten
+		this.entries.clear();
+		this.entries.putAll(visited);
+		return graph;
+	}
+
+	@Nonnull
+	private Entry load(@Nonnull String path, @Nonnull AtomicLong sourceBytes) throws ModuleLoaderException {
+		Entry previous = this.entries.get(path);
+		Module parsed;
+		if (previous != null && !this.changed.contains(path)) {
+			parsed = previous.parsed;
+			// the resolver may have changed its mind about where any import points, so even unchanged modules are
+			// checked; they are reused as is when none of their imports resolve differently
+			if (this.resolvedDependencies(parsed, path).equals(ModuleHelper.getModuleDependencies(previous.rewritten))) {
+				return previous;
+			}
+		} else {
+			parsed = this.parse(path, sourceBytes);
+		}
+		return new Entry(parsed, this.rewriter.rewrite(parsed, Paths.get(path).getParent()));
+	}
+
+	@Nonnull
+	private Module parse(@Nonnull String path, @Nonnull AtomicLong sourceBytes) throws ModuleLoaderException {
+		++this.parseCount;
+		if (!path.equals(this.entry)) {
+			return Bundler.parseDependency(this.options, path, this.loader, sourceBytes);
+		}
+		return Bundler.parseEntrypoint(this.options, Paths.get(path), this.loader, sourceBytes);
+	}
+
+	@Nonnull
+	private ImmutableList<String> resolvedDependencies(@Nonnull Module parsed, @Nonnull String path) {
+		Path directory = Paths.get(path).getParent();
+		return ModuleHelper.getModuleDependencies(parsed).map(specifier -> this.resolver.resolve(directory, specifier));
+	}
+}
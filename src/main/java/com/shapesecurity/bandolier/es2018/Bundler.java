@@ -15,9 +15,13 @@
  */
 package com.shapesecurity.bandolier.es2018;
 
+import com.shapesecurity.bandolier.es2018.bundlers.BundleMetrics;
 import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.ChunkedBundle;
+import com.shapesecurity.bandolier.es2018.bundlers.ChunkingModuleBundler;
 import com.shapesecurity.bandolier.es2018.bundlers.IModuleBundler;
 import com.shapesecurity.bandolier.es2018.bundlers.PiercedModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.BundleLimitException;
 import com.shapesecurity.bandolier.es2018.loader.FileLoader;
 import com.shapesecurity.bandolier.es2018.loader.FileSystemResolver;
 import com.shapesecurity.bandolier.es2018.loader.IResolver;
@@ -25,6 +29,7 @@ import com.shapesecurity.bandolier.es2018.loader.IResourceLoader;
 import com.shapesecurity.bandolier.es2018.loader.ModuleLoaderException;
 import com.shapesecurity.functional.Pair;
 import com.shapesecurity.functional.data.ImmutableList;
+import com.shapesecurity.functional.data.Maybe;
 import com.shapesecurity.shift.es2018.ast.Module;
 import com.shapesecurity.shift.es2018.ast.Script;
 import com.shapesecurity.shift.es2018.parser.EarlyError;
@@ -33,11 +38,21 @@ import com.shapesecurity.shift.es2018.parser.Parser;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Bundler {
 
@@ -77,11 +92,32 @@ public class Bundler {
 	 */
 	@Nonnull
 	public static Script bundle(@Nonnull BundlerOptions options, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, IModuleBundler bundler) throws ModuleLoaderException {
-		try {
-			return bundleModule(options, loader.loadModule(filePath), filePath, resolver, loader, bundler);
-		} catch (IOException | JsError e) {
-			throw new ModuleLoaderException(filePath.toString(), e);
-		}
+		AtomicLong sourceBytes = new AtomicLong();
+		options.limits.checkModule(filePath.toString(), 1);
+		BundleMetrics.Measurement parse = BundleMetrics.start(options.metrics, "parse", filePath.toAbsolutePath().normalize().toString());
+		Module module = parseEntrypoint(options, filePath, loader, sourceBytes);
+		parse.stop();
+		return bundleModule(options, module, filePath, resolver, loader, bundler, sourceBytes);
+	}
+
+	/**
+	 * Bundles the module specified by the given path and its dependencies and writes the resulting code, without ever
+	 * holding all of it in memory; see {@link StreamingCodeGen}.
+	 *
+	 * @param options options object
+	 * @param filePath is the path to the input entry point module.
+	 * @param resolver how to resolve the path
+	 * @param loader   how to load modules
+	 * @param writer   where to write the code
+	 * @throws ModuleLoaderException when the module fails to load
+	 * @throws IOException when writing fails
+	 */
+	public static void bundleTo(@Nonnull BundlerOptions options, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, IModuleBundler bundler, @Nonnull Writer writer) throws ModuleLoaderException, IOException {
+		Script script = bundle(options, filePath, resolver, loader, bundler);
+		options.limits.check(filePath.toString());
+		BundleMetrics.Measurement codegen = BundleMetrics.start(options.metrics, "codegen");
+		StreamingCodeGen.codeGen(script, false, writer);
+		codegen.stop();
 	}
 
 	/**
@@ -114,7 +150,9 @@ public class Bundler {
 	@Nonnull
 	public static Script bundleString(@Nonnull BundlerOptions options, @Nonnull String source, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, IModuleBundler bundler) throws ModuleLoaderException {
 		try {
-			return bundler.bundleEntrypoint(options, filePath.toAbsolutePath().normalize().toString(), loadDependencies(Parser.parseModule(source), filePath, resolver, loader));
+			return bundler.bundleEntrypoint(options, filePath.toAbsolutePath().normalize().toString(), loadDependencies(options, Parser.parseModule(source), filePath, resolver, loader));
+		} catch (BundleLimitException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new ModuleLoaderException(filePath.toString(), e);
 		}
@@ -150,8 +188,23 @@ public class Bundler {
 	 */
 	@Nonnull
 	public static Script bundleModule(@Nonnull BundlerOptions options, @Nonnull Module mod, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, IModuleBundler bundler) throws ModuleLoaderException {
+		return bundleModule(options, mod, filePath, resolver, loader, bundler, new AtomicLong());
+	}
+
+	// sourceBytes holds the size of the entry point's source, when it was loaded and the size of sources is limited
+	@Nonnull
+	private static Script bundleModule(@Nonnull BundlerOptions options, @Nonnull Module mod, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, IModuleBundler bundler, @Nonnull AtomicLong sourceBytes) throws ModuleLoaderException {
 		try {
-			return bundler.bundleEntrypoint(options, filePath.toAbsolutePath().normalize().toString(), loadDependencies(mod, filePath, resolver, loader));
+			BundleMetrics.Measurement load = BundleMetrics.start(options.metrics, "load");
+			Map<String, Module> modules = loadDependencies(options, mod, filePath, resolver, loader, sourceBytes);
+			load.stop();
+			options.limits.check(filePath.toString());
+			BundleMetrics.Measurement bundle = BundleMetrics.start(options.metrics, "bundle");
+			Script script = bundler.bundleEntrypoint(options, filePath.toAbsolutePath().normalize().toString(), modules);
+			bundle.stop();
+			return script;
+		} catch (BundleLimitException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new ModuleLoaderException(filePath.toString(), e);
 		}
@@ -209,9 +262,20 @@ public class Bundler {
 	 */
 	@Nonnull
 	public static Pair<Script, ImmutableList<EarlyError>> bundleWithEarlyErrors(@Nonnull BundlerOptions options, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, IModuleBundler bundler) throws ModuleLoaderException {
+		AtomicLong sourceBytes = new AtomicLong();
+		options.limits.checkModule(filePath.toString(), 1);
+		Module module = parseEntrypoint(options, filePath, loader, sourceBytes);
+		Maybe<String> source;
 		try {
-			return bundleModuleWithEarlyErrors(options, loader.loadModule(filePath), filePath, resolver, loader, bundler);
-		} catch (IOException | JsError e) {
+			source = options.earlyErrorCache.isJust() ? Maybe.of(loader.loadResource(filePath)) : Maybe.empty();
+		} catch (IOException e) {
+			throw new ModuleLoaderException(filePath.toString(), e);
+		}
+		try {
+			return bundleEntrypointWithEarlyErrors(options, filePath.toAbsolutePath().normalize().toString(), source, loadDependencies(options, module, filePath, resolver, loader, sourceBytes), loader, bundler);
+		} catch (BundleLimitException e) {
+			throw e;
+		} catch (Exception e) {
 			throw new ModuleLoaderException(filePath.toString(), e);
 		}
 	}
@@ -246,7 +310,9 @@ public class Bundler {
 	@Nonnull
 	public static Pair<Script, ImmutableList<EarlyError>> bundleStringWithEarlyErrors(@Nonnull BundlerOptions options, @Nonnull String mod, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, IModuleBundler bundler) throws ModuleLoaderException {
 		try {
-			return bundler.bundleEntrypointWithEarlyErrors(options, filePath.toAbsolutePath().normalize().toString(), loadDependencies(Parser.parseModule(mod), filePath, resolver, loader));
+			return bundleEntrypointWithEarlyErrors(options, filePath.toAbsolutePath().normalize().toString(), Maybe.of(mod), loadDependencies(options, Parser.parseModule(mod), filePath, resolver, loader), loader, bundler);
+		} catch (BundleLimitException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new ModuleLoaderException(filePath.toString(), e);
 		}
@@ -283,12 +349,33 @@ public class Bundler {
 	@Nonnull
 	public static Pair<Script, ImmutableList<EarlyError>> bundleModuleWithEarlyErrors(@Nonnull BundlerOptions options, @Nonnull Module mod, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, IModuleBundler bundler) throws ModuleLoaderException {
 		try {
-			return bundler.bundleEntrypointWithEarlyErrors(options, filePath.toAbsolutePath().normalize().toString(), loadDependencies(mod, filePath, resolver, loader));
+			return bundleEntrypointWithEarlyErrors(options, filePath.toAbsolutePath().normalize().toString(), Maybe.empty(), loadDependencies(options, mod, filePath, resolver, loader), loader, bundler);
+		} catch (BundleLimitException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new ModuleLoaderException(filePath.toString(), e);
 		}
 	}
 
+	// Early errors are reused from the options' cache, if any, for the modules whose source is known: the entry point's
+	// when given, and each dependency's, loaded once more from the loader's cache if it has one.
+	@Nonnull
+	private static Pair<Script, ImmutableList<EarlyError>> bundleEntrypointWithEarlyErrors(@Nonnull BundlerOptions options, @Nonnull String entry, @Nonnull Maybe<String> entrySource, @Nonnull Map<String, Module> modules, @Nonnull IResourceLoader loader, @Nonnull IModuleBundler bundler) throws Exception {
+		if (options.earlyErrorCache.isNothing()) {
+			return bundler.bundleEntrypointWithEarlyErrors(options, entry, modules);
+		}
+		return Pair.of(bundler.bundleEntrypoint(options, entry, modules), IModuleBundler.earlyErrors(options, modules, path -> {
+			if (path.equals(entry)) {
+				return entrySource;
+			}
+			try {
+				return Maybe.of(loader.loadResource(Paths.get(path)));
+			} catch (IOException e) {
+				return Maybe.empty();
+			}
+		}));
+	}
+
 	/**
 	 * Bundles the module provided as a string and along with its dependencies and returns the resulting
 	 * Script. Deterministic as long as the bundler has no sources of nondeterminism other than the ordering
@@ -304,6 +391,111 @@ public class Bundler {
 		return bundleModuleWithEarlyErrors(BundlerOptions.DEFAULT_OPTIONS, mod, filePath, resolver, loader, bundler);
 	}
 
+	/**
+	 * Bundles several entry points that share modules. The union of their import graphs is loaded and parsed once, and
+	 * each entry point's bundler input contains the same module instances as every other entry point that imports
+	 * them, so bundlers can do per-module work once (see {@link IModuleBundler#bundleEntrypoints}). Each bundle is the
+	 * same as bundling its entry point on its own.
+	 *
+	 * @param options options object
+	 * @param filePaths paths to the entry point modules
+	 * @param resolver how to resolve paths
+	 * @param loader how to load modules
+	 * @param bundler how to bundle each entry point
+	 * @return the bundle of each entry point, in the order of the given paths
+	 * @throws ModuleLoaderException when a module fails to load or an entry point fails to bundle
+	 */
+	@Nonnull
+	public static List<Script> bundleAll(@Nonnull BundlerOptions options, @Nonnull List<Path> filePaths, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, IModuleBundler bundler) throws ModuleLoaderException {
+		BundleMetrics.Measurement load = BundleMetrics.start(options.metrics, "load");
+		Map<String, Map<String, Module>> entries = loadEntrypoints(options, filePaths, resolver, loader);
+		load.stop();
+		options.limits.check(String.join(", ", entries.keySet()));
+		Map<String, Script> scripts;
+		try {
+			BundleMetrics.Measurement bundle = BundleMetrics.start(options.metrics, "bundle");
+			scripts = bundler.bundleEntrypoints(options, entries);
+			bundle.stop();
+		} catch (BundleLimitException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ModuleLoaderException(String.join(", ", entries.keySet()), e);
+		}
+		List<Script> bundles = new ArrayList<>(filePaths.size());
+		for (Path filePath : filePaths) {
+			bundles.add(scripts.get(filePath.toAbsolutePath().normalize().toString()));
+		}
+		return bundles;
+	}
+
+	/**
+	 * Bundles several entry points that share modules, using the default resolver and loaders.
+	 * @param options options object
+	 * @param filePaths paths to the entry point modules
+	 * @return the bundle of each entry point, in the order of the given paths
+	 * @throws ModuleLoaderException
+	 */
+	@Nonnull
+	public static List<Script> bundleAll(@Nonnull BundlerOptions options, @Nonnull List<Path> filePaths) throws ModuleLoaderException {
+		return bundleAll(options, filePaths, new FileSystemResolver(), new FileLoader(), new PiercedModuleBundler());
+	}
+
+	/**
+	 * Bundles several entry points, emitting each module imported by more than one of them once, in a shared chunk.
+	 * The import graphs are loaded as for {@link #bundleAll}.
+	 *
+	 * @param options options object
+	 * @param filePaths paths to the entry point modules
+	 * @param resolver how to resolve paths
+	 * @param loader how to load modules
+	 * @param bundler how to split the modules into entry point scripts and chunks
+	 * @return the entry point scripts, keyed by normalized absolute path, and the chunks they need
+	 * @throws ModuleLoaderException when a module fails to load or the entry points fail to bundle
+	 */
+	@Nonnull
+	public static ChunkedBundle bundleChunked(@Nonnull BundlerOptions options, @Nonnull List<Path> filePaths, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, @Nonnull ChunkingModuleBundler bundler) throws ModuleLoaderException {
+		BundleMetrics.Measurement load = BundleMetrics.start(options.metrics, "load");
+		Map<String, Map<String, Module>> entries = loadEntrypoints(options, filePaths, resolver, loader);
+		load.stop();
+		options.limits.check(String.join(", ", entries.keySet()));
+		try {
+			BundleMetrics.Measurement bundle = BundleMetrics.start(options.metrics, "bundle");
+			ChunkedBundle chunked = bundler.bundleEntrypoints(options, entries);
+			bundle.stop();
+			return chunked;
+		} catch (BundleLimitException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ModuleLoaderException(String.join(", ", entries.keySet()), e);
+		}
+	}
+
+	// the module map of each distinct entry point, sharing the modules they have in common
+	@Nonnull
+	private static Map<String, Map<String, Module>> loadEntrypoints(@Nonnull BundlerOptions options, @Nonnull List<Path> filePaths, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader) throws ModuleLoaderException {
+		ImportResolvingRewriter rewriter = new ImportResolvingRewriter(resolver);
+		Map<String, Module> known = new HashMap<>();
+		AtomicLong sourceBytes = new AtomicLong();
+		Map<String, Map<String, Module>> entries = new LinkedHashMap<>();
+		for (Path filePath : filePaths) {
+			Path entry = filePath.toAbsolutePath().normalize();
+			if (entries.containsKey(entry.toString())) {
+				continue;
+			}
+			Module module = known.get(entry.toString());
+			if (module == null) {
+				options.limits.checkModule(filePath.toString(), 1);
+				BundleMetrics.Measurement parse = BundleMetrics.start(options.metrics, "parse", entry.toString());
+				Module parsed = parseEntrypoint(options, filePath, loader, sourceBytes);
+				parse.stop();
+				module = resolveImports(options.metrics, rewriter, parsed, entry.toString());
+				known.put(entry.toString(), module);
+			}
+			entries.put(entry.toString(), loadDependencies(options, entry.toString(), module, rewriter, loader, known, sourceBytes));
+		}
+		return entries;
+	}
+
 	/**
 	 * Recursively loads all the modules referenced by the input module.
 	 *
@@ -316,34 +508,65 @@ public class Bundler {
 	@Nonnull
 	static Map<String, Module> loadDependencies(@Nonnull Module module, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader)
 		throws ModuleLoaderException {
+		return loadDependencies(BundlerOptions.DEFAULT_OPTIONS, module, filePath, resolver, loader);
+	}
+
+	/**
+	 * Recursively loads all the modules referenced by the input module. If the options provide an executor, each
+	 * breadth-first level of the import graph is resolved, loaded and parsed concurrently on it; the resolver and loader
+	 * must then be thread-safe. The returned map has the same ordering either way.
+	 *
+	 * @param options  options object
+	 * @param filePath is the path to the input module.
+	 * @param resolver how to resolve the path
+	 * @param loader   how to load
+	 * @return is a map from module names (path to modules) to the loaded modules.
+	 * @throws ModuleLoaderException when the module fails to load
+	 */
+	@Nonnull
+	static Map<String, Module> loadDependencies(@Nonnull BundlerOptions options, @Nonnull Module module, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader)
+		throws ModuleLoaderException {
+		return loadDependencies(options, module, filePath, resolver, loader, new AtomicLong());
+	}
+
+	@Nonnull
+	private static Map<String, Module> loadDependencies(@Nonnull BundlerOptions options, @Nonnull Module module, @Nonnull Path filePath, @Nonnull IResolver resolver, @Nonnull IResourceLoader loader, @Nonnull AtomicLong sourceBytes)
+		throws ModuleLoaderException {
 
-		Map<String, Module> loadedModules = new LinkedHashMap<>();
-		LinkedList<String> toLoad = new LinkedList<>();
 		ImportResolvingRewriter rewriter = new ImportResolvingRewriter(resolver);
 		filePath = filePath.toAbsolutePath().normalize();
-		Module rewritten = rewriter.rewrite(module, filePath.getParent());
-		loadedModules.put(filePath.toString(), rewritten);
-		toLoad.add(filePath.toString());
+		Module rewritten = resolveImports(options.metrics, rewriter, module, filePath.toString());
+		return loadDependencies(options, filePath.toString(), rewritten, rewriter, loader, new HashMap<>(), sourceBytes);
+	}
+
+	// Modules found in known, which holds the modules already loaded for other entry points, are reused rather than
+	// loaded again; newly loaded modules are added to it, and their source to sourceBytes.
+	@Nonnull
+	private static Map<String, Module> loadDependencies(@Nonnull BundlerOptions options, @Nonnull String entry, @Nonnull Module rewritten, @Nonnull ImportResolvingRewriter rewriter, @Nonnull IResourceLoader loader, @Nonnull Map<String, Module> known, @Nonnull AtomicLong sourceBytes)
+		throws ModuleLoaderException {
+
+		Map<String, Module> loadedModules = new LinkedHashMap<>();
+		loadedModules.put(entry, rewritten);
+
+		if (options.executor.isJust()) {
+			loadDependenciesConcurrently(options, loadedModules, entry, rewriter, loader, known, sourceBytes, options.executor.fromJust());
+			return loadedModules;
+		}
+
+		LinkedList<String> toLoad = new LinkedList<>();
+		toLoad.add(entry);
 
 		while (!toLoad.isEmpty()) {
 			String root = toLoad.remove();
 			for (String dependency : ModuleHelper.getModuleDependencies(loadedModules.get(root))) {
 				if (!loadedModules.containsKey(dependency)) {
-					try {
-						switch (getFileExtension(dependency)) {
-							case "json":
-								module = Parser.parseModule("export default (" + loader.loadResource(Paths.get(dependency)) + ");");
-								break;
-							case "js":
-							case "esm":
-							default:
-								module = loader.loadModule(Paths.get(dependency));
-						}
-					} catch (IOException | JsError e) {
-						throw new ModuleLoaderException(dependency, e);
+					options.limits.checkModule(dependency, loadedModules.size() + 1);
+					Module loaded = known.get(dependency);
+					if (loaded == null) {
+						loaded = loadDependency(options, dependency, rewriter, loader, sourceBytes);
+						known.put(dependency, loaded);
 					}
-					rewritten = rewriter.rewrite(module, Paths.get(dependency).getParent());
-					loadedModules.put(dependency, rewritten);
+					loadedModules.put(dependency, loaded);
 					toLoad.add(dependency);
 				}
 			}
@@ -352,6 +575,109 @@ public class Bundler {
 		return loadedModules;
 	}
 
+	// Visits the import graph one breadth-first level at a time. Discovering the next level is sequential and visits
+	// modules in the same order as the queue in loadDependencies, so insertion order into loadedModules is unchanged;
+	// only the loading of the modules within a level is concurrent.
+	private static void loadDependenciesConcurrently(@Nonnull BundlerOptions options, @Nonnull Map<String, Module> loadedModules, @Nonnull String entry, @Nonnull ImportResolvingRewriter rewriter, @Nonnull IResourceLoader loader, @Nonnull Map<String, Module> known, @Nonnull AtomicLong sourceBytes, @Nonnull Executor executor)
+		throws ModuleLoaderException {
+		List<String> level = Collections.singletonList(entry);
+		while (!level.isEmpty()) {
+			LinkedHashSet<String> nextLevel = new LinkedHashSet<>();
+			for (String root : level) {
+				for (String dependency : ModuleHelper.getModuleDependencies(loadedModules.get(root))) {
+					if (!loadedModules.containsKey(dependency)) {
+						nextLevel.add(dependency);
+					}
+				}
+			}
+			int modules = loadedModules.size();
+			for (String dependency : nextLevel) {
+				options.limits.checkModule(dependency, ++modules);
+			}
+			Map<String, CompletableFuture<Module>> futures = new HashMap<>();
+			for (String dependency : nextLevel) {
+				if (!known.containsKey(dependency)) {
+					futures.put(dependency, CompletableFuture.supplyAsync(() -> {
+						try {
+							options.limits.check(dependency);
+							return loadDependency(options, dependency, rewriter, loader, sourceBytes);
+						} catch (ModuleLoaderException e) {
+							throw new CompletionException(e);
+						}
+					}, executor));
+				}
+			}
+			for (String dependency : nextLevel) {
+				if (futures.containsKey(dependency)) {
+					try {
+						known.put(dependency, futures.get(dependency).join());
+					} catch (CompletionException e) {
+						futures.values().forEach(future -> future.cancel(false));
+						if (e.getCause() instanceof ModuleLoaderException) {
+							throw (ModuleLoaderException) e.getCause();
+						}
+						throw e;
+					}
+				}
+				loadedModules.put(dependency, known.get(dependency));
+			}
+			level = new ArrayList<>(nextLevel);
+		}
+	}
+
+	@Nonnull
+	private static Module loadDependency(@Nonnull BundlerOptions options, @Nonnull String dependency, @Nonnull ImportResolvingRewriter rewriter, @Nonnull IResourceLoader loader, @Nonnull AtomicLong sourceBytes) throws ModuleLoaderException {
+		BundleMetrics.Measurement parse = BundleMetrics.start(options.metrics, "parse", dependency);
+		Module parsed = parseDependency(options, dependency, loader, sourceBytes);
+		parse.stop();
+		return resolveImports(options.metrics, rewriter, parsed, dependency);
+	}
+
+	@Nonnull
+	private static Module resolveImports(@Nonnull Maybe<BundleMetrics> metrics, @Nonnull ImportResolvingRewriter rewriter, @Nonnull Module module, @Nonnull String path) {
+		BundleMetrics.Measurement resolve = BundleMetrics.start(metrics, "resolveImports", path);
+		Module rewritten = rewriter.rewrite(module, Paths.get(path).getParent());
+		resolve.stop();
+		return rewritten;
+	}
+
+	// loads and parses a dependency, without resolving its imports, adding its source to sourceBytes when the size of
+	// sources is limited
+	@Nonnull
+	static Module parseDependency(@Nonnull BundlerOptions options, @Nonnull String dependency, @Nonnull IResourceLoader loader, @Nonnull AtomicLong sourceBytes) throws ModuleLoaderException {
+		try {
+			switch (getFileExtension(dependency)) {
+				case "json":
+					String json = loader.loadResource(Paths.get(dependency));
+					options.limits.addSource(dependency, json, sourceBytes);
+					return JsonModule.of(json, options.jsonParseThreshold);
+				case "js":
+				case "esm":
+				default:
+					// loaded once more to be measured before parsing, from the loader's cache if it has one
+					if (options.limits.maxSourceBytes.isJust()) {
+						options.limits.addSource(dependency, loader.loadResource(Paths.get(dependency)), sourceBytes);
+					}
+					return loader.loadModule(Paths.get(dependency));
+			}
+		} catch (IOException | JsError e) {
+			throw new ModuleLoaderException(dependency, e);
+		}
+	}
+
+	// loads and parses an entry point, adding its source to sourceBytes when the size of sources is limited
+	@Nonnull
+	static Module parseEntrypoint(@Nonnull BundlerOptions options, @Nonnull Path filePath, @Nonnull IResourceLoader loader, @Nonnull AtomicLong sourceBytes) throws ModuleLoaderException {
+		try {
+			if (options.limits.maxSourceBytes.isJust()) {
+				options.limits.addSource(filePath.toString(), loader.loadResource(filePath), sourceBytes);
+			}
+			return loader.loadModule(filePath);
+		} catch (IOException | JsError e) {
+			throw new ModuleLoaderException(filePath.toString(), e);
+		}
+	}
+
 	@Nonnull
 	private static String getFileExtension(@Nonnull String filename) {
 		int i = filename.lastIndexOf('.');
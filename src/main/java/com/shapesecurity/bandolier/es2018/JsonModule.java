@@ -0,0 +1,168 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.shapesecurity.functional.data.ImmutableList;
+import com.shapesecurity.functional.data.Maybe;
+import com.shapesecurity.shift.es2018.ast.ArrayExpression;
+import com.shapesecurity.shift.es2018.ast.CallExpression;
+import com.shapesecurity.shift.es2018.ast.DataProperty;
+import com.shapesecurity.shift.es2018.ast.ExportDefault;
+import com.shapesecurity.shift.es2018.ast.Expression;
+import com.shapesecurity.shift.es2018.ast.IdentifierExpression;
+import com.shapesecurity.shift.es2018.ast.LiteralBooleanExpression;
+import com.shapesecurity.shift.es2018.ast.LiteralInfinityExpression;
+import com.shapesecurity.shift.es2018.ast.LiteralNullExpression;
+import com.shapesecurity.shift.es2018.ast.LiteralNumericExpression;
+import com.shapesecurity.shift.es2018.ast.LiteralStringExpression;
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.ast.ObjectExpression;
+import com.shapesecurity.shift.es2018.ast.ObjectProperty;
+import com.shapesecurity.shift.es2018.ast.SpreadElementExpression;
+import com.shapesecurity.shift.es2018.ast.StaticMemberExpression;
+import com.shapesecurity.shift.es2018.ast.StaticPropertyName;
+import com.shapesecurity.shift.es2018.ast.UnaryExpression;
+import com.shapesecurity.shift.es2018.ast.operators.UnaryOperator;
+import com.shapesecurity.shift.es2018.parser.JsError;
+import com.shapesecurity.shift.es2018.parser.Parser;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the modules of JSON files, which export the JSON's value as their default export. The AST is built straight
+ * from a JSON reader, and is the same one the parser would produce for <code>export default (json);</code>, without
+ * the cost of parsing the JSON as JavaScript. Files that are not strict JSON are still parsed as JavaScript.
+ */
+final class JsonModule {
+
+	private JsonModule() {
+
+	}
+
+	/**
+	 * @param json the contents of the JSON file
+	 * @param parseThreshold the length from which the JSON is exported as <code>JSON.parse("json")</code> instead, which
+	 *                       engines evaluate much faster than the equivalent literal
+	 * @return the module
+	 * @throws JsError when the file is neither JSON nor a JavaScript expression
+	 */
+	@Nonnull
+	static Module of(@Nonnull String json, @Nonnull Maybe<Integer> parseThreshold) throws JsError {
+		try (JsonReader reader = new JsonReader(new StringReader(json))) {
+			Expression value;
+			if (parseThreshold.isJust() && json.length() >= parseThreshold.fromJust()) {
+				value = new CallExpression(new StaticMemberExpression(new IdentifierExpression("JSON"), "parse"), ImmutableList.of(new LiteralStringExpression(minify(reader))));
+			} else {
+				value = read(reader);
+			}
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new IllegalStateException("Expected a single JSON value");
+			}
+			return new Module(ImmutableList.empty(), ImmutableList.of(new ExportDefault(value)));
+		} catch (IOException | IllegalStateException | NumberFormatException e) {
+			return Parser.parseModule("export default (" + json + ");");
+		}
+	}
+
+	@Nonnull
+	private static Expression read(@Nonnull JsonReader reader) throws IOException {
+		switch (reader.peek()) {
+			case BEGIN_OBJECT:
+				List<ObjectProperty> properties = new ArrayList<>();
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String name = reader.nextName();
+					properties.add(new DataProperty(new StaticPropertyName(name), read(reader)));
+				}
+				reader.endObject();
+				return new ObjectExpression(ImmutableList.from(properties));
+			case BEGIN_ARRAY:
+				List<Maybe<SpreadElementExpression>> elements = new ArrayList<>();
+				reader.beginArray();
+				while (reader.hasNext()) {
+					elements.add(Maybe.of(read(reader)));
+				}
+				reader.endArray();
+				return new ArrayExpression(ImmutableList.from(elements));
+			case STRING:
+				return new LiteralStringExpression(reader.nextString());
+			case NUMBER:
+				return number(reader.nextString());
+			case BOOLEAN:
+				return new LiteralBooleanExpression(reader.nextBoolean());
+			case NULL:
+				reader.nextNull();
+				return new LiteralNullExpression();
+			default:
+				throw new IllegalStateException("Unexpected " + reader.peek());
+		}
+	}
+
+	// as the parser reads it: a negated literal, and infinity for literals too large for a double
+	@Nonnull
+	private static Expression number(@Nonnull String literal) {
+		if (literal.startsWith("-")) {
+			return new UnaryExpression(UnaryOperator.Minus, number(literal.substring(1)));
+		}
+		double value = Double.parseDouble(literal);
+		return Double.isInfinite(value) ? new LiteralInfinityExpression() : new LiteralNumericExpression(value);
+	}
+
+	// the JSON without whitespace, checked to be a single value
+	@Nonnull
+	private static String minify(@Nonnull JsonReader reader) throws IOException {
+		StringWriter out = new StringWriter();
+		JsonWriter writer = new JsonWriter(out);
+		int depth = 0;
+		do {
+			switch (reader.peek()) {
+				case BEGIN_OBJECT:
+					reader.beginObject();
+					writer.beginObject();
+					++depth;
+					break;
+				case END_OBJECT:
+					reader.endObject();
+					writer.endObject();
+					--depth;
+					break;
+				case BEGIN_ARRAY:
+					reader.beginArray();
+					writer.beginArray();
+					++depth;
+					break;
+				case END_ARRAY:
+					reader.endArray();
+					writer.endArray();
+					--depth;
+					break;
+				case NAME:
+					writer.name(reader.nextName());
+					break;
+				case STRING:
+					writer.value(reader.nextString());
+					break;
+				case NUMBER:
+					writer.jsonValue(reader.nextString());
+					break;
+				case BOOLEAN:
+					writer.value(reader.nextBoolean());
+					break;
+				case NULL:
+					reader.nextNull();
+					writer.nullValue();
+					break;
+				default:
+					throw new IllegalStateException("Unexpected " + reader.peek());
+			}
+		} while (depth > 0);
+		writer.flush();
+		return out.toString();
+	}
+}
@@ -1,53 +1,219 @@
 package com.shapesecurity.bandolier.es2018;
 
+import com.shapesecurity.bandolier.es2018.bundlers.BundleMetrics;
 import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
 import com.shapesecurity.bandolier.es2018.bundlers.PiercedModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.DirectorySnapshot;
+import com.shapesecurity.bandolier.es2018.loader.DiskModuleCachingLoader;
 import com.shapesecurity.bandolier.es2018.loader.FileLoader;
 import com.shapesecurity.bandolier.es2018.loader.IResourceLoader;
+import com.shapesecurity.bandolier.es2018.loader.ModuleCachingLoader;
 import com.shapesecurity.bandolier.es2018.loader.NodeResolver;
-import com.shapesecurity.shift.es2018.ast.Script;
-import com.shapesecurity.shift.es2018.codegen.CodeGen;
+import com.shapesecurity.bandolier.es2018.loader.NodeResolverCache;
+import com.shapesecurity.bandolier.es2018.loader.ResourceCache;
+import com.shapesecurity.functional.data.Maybe;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Main {
 
 	private static final void usage() {
-		System.out.println("Arguments: [OPTIONS] [target module]\n" +
+		System.out.println("Arguments: [OPTIONS] [target module...]\n" +
 			"Options:\n" +
 			"	-n --node		Node import resolution strategy\n" +
 			"	-s --spec		ECMAScript import resolution strategy\n" +
+			"	--cache-dir DIR		Reuse parsed modules and unchanged bundles cached in DIR across runs\n" +
+			"	--daemon PORT		Serve bundle requests on localhost:PORT instead of bundling a target, from\n" +
+			"				clients that can read ~/.bandolier/daemon-PORT.token; all other options\n" +
+			"				are ignored\n" +
+			"	--client PORT		Have the daemon on localhost:PORT bundle the target; only -n and -s apply\n" +
+			"	--out-dir DIR		Write each target's bundle to a file of the same name in DIR\n" +
+			"	--manifest FILE		Also bundle the targets listed in FILE, one per line, each optionally\n" +
+			"				followed by a tab and its output path\n" +
+			"	--jobs N		Bundle up to N targets at once (default: number of processors)\n" +
+			"	--low-memory		Lower peak memory use by releasing each module's intermediate forms early\n" +
+			"	--json-parse-threshold N	Emit JSON modules of N characters or more as JSON.parse calls on strings\n" +
+			"	--frequency-ranked-names	Give the shortest names to the renamed variables used most often\n" +
+			"	--profile		Print the time and allocations of each phase to stderr\n" +
 			"	-h --help		Show this help menu");
 	}
 
 	public static void main(String[] args) throws Exception {
-		BundlerOptions options = BundlerOptions.DEFAULT_OPTIONS;
-		String filename = null;
-		for (String arg : args) {
-			if (arg.equals("-n") || arg.equals("--node")) {
-				options = BundlerOptions.NODE_OPTIONS;
+		String optionsName = "default";
+		List<String> filenames = new ArrayList<>();
+		String cacheDir = null;
+		String outDir = null;
+		String manifest = null;
+		int jobs = Runtime.getRuntime().availableProcessors();
+		boolean profile = false;
+		boolean lowMemory = false;
+		Integer jsonParseThreshold = null;
+		boolean frequencyRankedNames = false;
+		Integer daemonPort = null;
+		Integer clientPort = null;
+		for (int i = 0; i < args.length; ++i) {
+			String arg = args[i];
+			if (arg.equals("--cache-dir")) {
+				if (i + 1 == args.length) {
+					System.err.println("Missing directory for " + arg);
+					usage();
+					return;
+				}
+				cacheDir = args[++i];
+			} else if (arg.equals("--out-dir") || arg.equals("--manifest")) {
+				if (i + 1 == args.length) {
+					System.err.println("Missing path for " + arg);
+					usage();
+					return;
+				}
+				if (arg.equals("--out-dir")) {
+					outDir = args[++i];
+				} else {
+					manifest = args[++i];
+				}
+			} else if (arg.equals("--jobs")) {
+				if (i + 1 == args.length || !args[i + 1].matches("[1-9]\\d*")) {
+					System.err.println("Missing number for " + arg);
+					usage();
+					return;
+				}
+				jobs = Integer.parseInt(args[++i]);
+			} else if (arg.equals("--json-parse-threshold")) {
+				if (i + 1 == args.length || !args[i + 1].matches("\\d+")) {
+					System.err.println("Missing number for " + arg);
+					usage();
+					return;
+				}
+				jsonParseThreshold = Integer.parseInt(args[++i]);
+			} else if (arg.equals("--daemon") || arg.equals("--client")) {
+				if (i + 1 == args.length || !args[i + 1].matches("\\d+")) {
+					System.err.println("Missing port for " + arg);
+					usage();
+					return;
+				}
+				if (arg.equals("--daemon")) {
+					daemonPort = Integer.parseInt(args[++i]);
+				} else {
+					clientPort = Integer.parseInt(args[++i]);
+				}
+			} else if (arg.equals("-n") || arg.equals("--node")) {
+				optionsName = "node";
 			} else if (arg.equals("-s") || arg.equals("--spec")) {
-				options = BundlerOptions.SPEC_OPTIONS;
+				optionsName = "spec";
+			} else if (arg.equals("--low-memory")) {
+				lowMemory = true;
+			} else if (arg.equals("--frequency-ranked-names")) {
+				frequencyRankedNames = true;
+			} else if (arg.equals("--profile")) {
+				profile = true;
 			} else if (arg.equals("-h") || arg.equals("--help")) {
 				usage();
 				return;
-			} else if (filename == null) {
-				filename = arg;
-			} else {
+			} else if (arg.startsWith("-")) {
 				System.err.println("Invalid argument: " + arg);
 				usage();
 				return;
+			} else {
+				filenames.add(arg);
 			}
 		}
-		if (filename == null) {
+		if (daemonPort != null) {
+			if (daemonPort == 0) {
+				System.err.println("The daemon needs a fixed port, for clients to find its token.");
+				usage();
+				return;
+			}
+			BundleDaemon daemon = new BundleDaemon(daemonPort, Runtime.getRuntime().availableProcessors(), BundleDaemon.DEFAULT_CACHE_BYTES, BundleDaemon.defaultTokenFile(daemonPort), System.err);
+			System.err.println("Listening on localhost:" + daemon.getPort());
+			daemon.serve();
+			return;
+		}
+		if (filenames.isEmpty() && manifest == null) {
 			System.err.println("No target module specified.");
 			usage();
 			return;
 		}
-		IResourceLoader loader = new FileLoader();
-		Script bundle = Bundler.bundle(options, Paths.get(filename).toAbsolutePath(),
-									   new NodeResolver(loader),
-									   loader, new PiercedModuleBundler());
-		System.out.println(CodeGen.codeGen(bundle));
+		boolean batch = filenames.size() > 1 || outDir != null || manifest != null;
+		if (batch && clientPort != null) {
+			System.err.println("Only a single target can be sent to a daemon.");
+			usage();
+			return;
+		}
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+		if (clientPort != null) {
+			String token = BundleDaemon.readToken(BundleDaemon.defaultTokenFile(clientPort));
+			System.err.println(BundleDaemon.request(clientPort, token, optionsName, Paths.get(filenames.get(0)), out));
+			return;
+		}
+		BundlerOptions options = BundleDaemon.optionsNamed(optionsName).fromJust();
+		BundleMetrics metrics = new BundleMetrics();
+		if (profile) {
+			options = options.withMetrics(metrics);
+		}
+		options = options.withLowMemory(lowMemory).withFrequencyRankedNames(frequencyRankedNames);
+		if (jsonParseThreshold != null) {
+			options = options.withJsonParseThreshold(jsonParseThreshold);
+		}
+		// nothing changes on disk during a single run, so every existence check can come from one snapshot
+		IResourceLoader loader = new FileLoader(new ResourceCache(), new DirectorySnapshot());
+		if (cacheDir != null) {
+			loader = new DiskModuleCachingLoader(loader, Paths.get(cacheDir));
+		} else if (batch && !lowMemory) {
+			// targets commonly share modules, which are then parsed once for all of them
+			loader = new ModuleCachingLoader(loader);
+		}
+		Maybe<BundleCache> bundleCache = cacheDir == null ? Maybe.empty() : Maybe.of(new BundleCache(Paths.get(cacheDir)));
+		if (batch) {
+			if (filenames.size() > 0 && outDir == null) {
+				System.err.println("An output directory is needed for more than one target.");
+				usage();
+				return;
+			}
+			Maybe<Path> outPath = outDir == null ? Maybe.empty() : Maybe.of(Paths.get(outDir));
+			Map<Path, Path> targets = new LinkedHashMap<>();
+			for (String filename : filenames) {
+				Path entry = Paths.get(filename).toAbsolutePath().normalize();
+				targets.put(entry, BatchBundler.outputFor(entry, outPath.fromJust()));
+			}
+			if (manifest != null) {
+				targets.putAll(BatchBundler.readManifest(Paths.get(manifest), outPath));
+			}
+			List<Path> conflicts = BatchBundler.conflictingOutputs(targets);
+			if (!conflicts.isEmpty()) {
+				System.err.println("More than one target would be written to " + conflicts.get(0));
+				System.exit(1);
+			}
+			Map<Path, Exception> failures = BatchBundler.bundleEach(options, targets, new NodeResolver(loader, new NodeResolverCache()), loader, PiercedModuleBundler::new, jobs, bundleCache);
+			for (Map.Entry<Path, Exception> failure : failures.entrySet()) {
+				System.err.println(failure.getKey() + ": " + failure.getValue().getMessage());
+			}
+			if (profile) {
+				System.err.print(metrics.report(10));
+			}
+			if (!failures.isEmpty()) {
+				System.exit(1);
+			}
+			return;
+		}
+		if (bundleCache.isJust()) {
+			out.write(bundleCache.fromJust().bundle(options, Paths.get(filenames.get(0)), new NodeResolver(loader, new NodeResolverCache()), loader, new PiercedModuleBundler()));
+		} else {
+			Bundler.bundleTo(options, Paths.get(filenames.get(0)).toAbsolutePath(),
+										   new NodeResolver(loader, new NodeResolverCache()),
+										   loader, new PiercedModuleBundler(), out);
+		}
+		out.write(System.lineSeparator());
+		out.flush();
+		if (profile) {
+			System.err.print(metrics.report(10));
+		}
 	}
 }
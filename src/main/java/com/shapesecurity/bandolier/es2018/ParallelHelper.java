@@ -0,0 +1,67 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.functional.F;
+import com.shapesecurity.functional.data.ImmutableList;
+import com.shapesecurity.functional.data.Maybe;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+public abstract class ParallelHelper {
+
+	// set on threads running a task of map, so that nested calls do not wait on tasks queued behind their own
+	private static final ThreadLocal<Boolean> IN_TASK = ThreadLocal.withInitial(() -> false);
+
+	private ParallelHelper() {
+
+	}
+
+	/**
+	 * Applies a function to every element of a list, concurrently on the executor if one is given. The results are in
+	 * the order of the input either way, so callers that merge them in order get the same output as the sequential path.
+	 * Calls made from within another call's function run on the calling thread.
+	 * @param executor where to run the function, or nothing to run it on the calling thread
+	 * @param list elements to map
+	 * @param f function to apply; must be safe to call concurrently
+	 * @param <A> element type
+	 * @param <B> result type
+	 * @return the results, in input order
+	 */
+	@Nonnull
+	public static <A, B> ImmutableList<B> map(@Nonnull Maybe<Executor> executor, @Nonnull ImmutableList<A> list, @Nonnull F<A, B> f) {
+		if (executor.isNothing() || list.length < 2 || IN_TASK.get()) {
+			return list.map(f);
+		}
+		List<CompletableFuture<B>> futures = new ArrayList<>(list.length);
+		for (A element : list) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				IN_TASK.set(true);
+				try {
+					return f.apply(element);
+				} finally {
+					IN_TASK.set(false);
+				}
+			}, executor.fromJust()));
+		}
+		List<B> results = new ArrayList<>(list.length);
+		for (CompletableFuture<B> future : futures) {
+			try {
+				results.add(future.join());
+			} catch (CompletionException e) {
+				futures.forEach(other -> other.cancel(false));
+				// rethrow what the function threw, as the sequential path would
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				} else if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw e;
+			}
+		}
+		return ImmutableList.from(results);
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.functional.data.ImmutableList;
+import com.shapesecurity.shift.es2018.ast.CallExpression;
+import com.shapesecurity.shift.es2018.ast.Expression;
+import com.shapesecurity.shift.es2018.ast.ExpressionStatement;
+import com.shapesecurity.shift.es2018.ast.FunctionBody;
+import com.shapesecurity.shift.es2018.ast.FunctionExpression;
+import com.shapesecurity.shift.es2018.ast.Script;
+import com.shapesecurity.shift.es2018.ast.Statement;
+import com.shapesecurity.shift.es2018.ast.StaticMemberExpression;
+import com.shapesecurity.shift.es2018.codegen.CodeGen;
+import com.shapesecurity.shift.es2018.codegen.CodeRep;
+import com.shapesecurity.shift.es2018.codegen.CodeRepFactory;
+import com.shapesecurity.shift.es2018.codegen.FormattedCodeRepFactory;
+import com.shapesecurity.shift.es2018.codegen.TokenStream;
+import com.shapesecurity.shift.es2018.reducer.Director;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Generates code for a script directly into a {@link Writer}, producing the same text as
+ * {@link CodeGen#codeGen(Script, boolean)}. Code is generated and written one statement at a time for the script's
+ * top-level statements and for the bodies of immediately invoked function expressions among them, which is where
+ * bundlers put the modules; so neither the text nor the intermediate code representation of the whole bundle is held
+ * in memory at once.
+ */
+public class StreamingCodeGen extends CodeGen {
+
+	// tokens are passed on to the writer once this many characters are buffered
+	private static final int FLUSH_THRESHOLD = 1 << 14;
+
+	// bodies standing in for the statements generated lazily, by identity
+	@Nonnull
+	private final Map<FunctionBody, ImmutableList<Statement>> deferredBodies = new IdentityHashMap<>();
+	@Nonnull
+	private final FlushingTokenStream tokenStream;
+
+	private StreamingCodeGen(@Nonnull CodeRepFactory factory, @Nonnull Writer writer) {
+		super(factory);
+		this.tokenStream = new FlushingTokenStream(writer);
+	}
+
+	/**
+	 * @param script the script to generate code for
+	 * @param pretty whether to format the code as {@link CodeGen#PRETTY} does
+	 * @param writer where to write the code; it is flushed but not closed
+	 * @throws IOException when writing fails
+	 */
+	public static void codeGen(@Nonnull Script script, boolean pretty, @Nonnull Writer writer) throws IOException {
+		StreamingCodeGen codeGen = new StreamingCodeGen(pretty ? new FormattedCodeRepFactory() : new CodeRepFactory(), writer);
+		try {
+			CodeRep rep = codeGen.reduceScript(script, Director.reduceListDirective(codeGen, script.directives), ImmutableList.of(codeGen.new DeferredStatements(script.statements)));
+			rep.emit(codeGen.tokenStream, false);
+			codeGen.tokenStream.flushAll();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Writes the code as UTF-8.
+	 * @see #codeGen(Script, boolean, Writer)
+	 */
+	public static void codeGen(@Nonnull Script script, boolean pretty, @Nonnull OutputStream out) throws IOException {
+		codeGen(script, pretty, new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Writes the code as UTF-8, e.g. to a {@link java.nio.channels.FileChannel}.
+	 * @see #codeGen(Script, boolean, Writer)
+	 */
+	public static void codeGen(@Nonnull Script script, boolean pretty, @Nonnull WritableByteChannel channel) throws IOException {
+		codeGen(script, pretty, Channels.newWriter(channel, StandardCharsets.UTF_8));
+	}
+
+	@Nonnull
+	@Override
+	public CodeRep reduceFunctionBody(@Nonnull FunctionBody node, @Nonnull ImmutableList<CodeRep> directives, @Nonnull ImmutableList<CodeRep> statements) {
+		ImmutableList<Statement> deferred = this.deferredBodies.remove(node);
+		if (deferred != null) {
+			statements = ImmutableList.of(new DeferredStatements(deferred));
+		}
+		return super.reduceFunctionBody(node, directives, statements);
+	}
+
+	// An IIFE, (function(){...})(...) or (function(){...}).call(...), is reduced with an empty stand-in body whose
+	// statements are then generated lazily. Anything else is reduced as a whole.
+	@Nonnull
+	private Statement deferBody(@Nonnull Statement statement) {
+		if (!(statement instanceof ExpressionStatement) || !(((ExpressionStatement) statement).expression instanceof CallExpression)) {
+			return statement;
+		}
+		CallExpression call = (CallExpression) ((ExpressionStatement) statement).expression;
+		Expression callee = call.callee instanceof StaticMemberExpression ? (Expression) ((StaticMemberExpression) call.callee).object : (Expression) call.callee;
+		if (!(callee instanceof FunctionExpression)) {
+			return statement;
+		}
+		FunctionExpression function = (FunctionExpression) callee;
+		FunctionBody standIn = new FunctionBody(function.body.directives, ImmutableList.empty());
+		this.deferredBodies.put(standIn, function.body.statements);
+		Expression newCallee = new FunctionExpression(function.isAsync, function.isGenerator, function.name, function.params, standIn);
+		if (call.callee instanceof StaticMemberExpression) {
+			newCallee = new StaticMemberExpression(newCallee, ((StaticMemberExpression) call.callee).property);
+		}
+		return new ExpressionStatement(new CallExpression(newCallee, call.arguments));
+	}
+
+	// Stands in for a list of statements, emitted as a sequence would emit them but reducing each one only when it is
+	// about to be written.
+	private final class DeferredStatements extends CodeRep {
+		@Nonnull
+		private final ImmutableList<Statement> statements;
+		private boolean inDirectivePosition = false;
+
+		DeferredStatements(@Nonnull ImmutableList<Statement> statements) {
+			this.statements = statements;
+		}
+
+		@Override
+		public void markIsInDirectivePosition() {
+			this.inDirectivePosition = true;
+		}
+
+		@Override
+		public void emit(@Nonnull TokenStream ts, boolean noIn) {
+			boolean first = true;
+			for (Statement statement : this.statements) {
+				CodeRep rep = Director.reduceStatement(StreamingCodeGen.this, deferBody(statement));
+				if (first && this.inDirectivePosition) {
+					rep.markIsInDirectivePosition();
+				}
+				first = false;
+				rep.emit(ts, noIn);
+				StreamingCodeGen.this.tokenStream.flushIfFull();
+			}
+		}
+	}
+
+	// TokenStream only ever looks back at the last two characters it wrote, so everything before them can be passed on
+	private static final class FlushingTokenStream extends TokenStream {
+		private static final int KEEP = 2;
+
+		@Nonnull
+		private final Writer out;
+
+		FlushingTokenStream(@Nonnull Writer out) {
+			super(new StringBuilder());
+			this.out = out;
+		}
+
+		void flushIfFull() {
+			if (this.writer.length() >= FLUSH_THRESHOLD) {
+				this.flushUpTo(this.writer.length() - KEEP);
+			}
+		}
+
+		void flushAll() {
+			this.flushUpTo(this.writer.length());
+		}
+
+		private void flushUpTo(int end) {
+			try {
+				this.out.append(this.writer, 0, end);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			this.writer.delete(0, end);
+		}
+	}
+}
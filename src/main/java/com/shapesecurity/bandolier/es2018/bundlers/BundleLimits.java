@@ -0,0 +1,116 @@
+package com.shapesecurity.bandolier.es2018.bundlers;
+
+import com.shapesecurity.bandolier.es2018.loader.BundleLimitException;
+import com.shapesecurity.functional.data.Maybe;
+
+import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds on the work of a bundle, given to the bundler through {@link BundlerOptions#withLimits(BundleLimits)}:
+ * cancellation and a deadline, checked before each module is loaded and between the phases of bundling, and the
+ * number of modules and bytes of source a bundle may load. Bundling stops with a {@link BundleLimitException} as soon
+ * as a limit is reached. Entry points count as modules, and their source is counted when they are loaded by path
+ * rather than given as a string or already parsed.
+ */
+public final class BundleLimits {
+
+	@Nonnull
+	public static final BundleLimits NONE = new BundleLimits(Maybe.empty(), Maybe.empty(), Maybe.empty(), Maybe.empty());
+
+	@Nonnull
+	public final Maybe<CancellationToken> cancellationToken;
+	@Nonnull
+	public final Maybe<Instant> deadline;
+	@Nonnull
+	public final Maybe<Integer> maxModules;
+	// in UTF-8
+	@Nonnull
+	public final Maybe<Long> maxSourceBytes;
+
+	private BundleLimits(@Nonnull Maybe<CancellationToken> cancellationToken, @Nonnull Maybe<Instant> deadline, @Nonnull Maybe<Integer> maxModules, @Nonnull Maybe<Long> maxSourceBytes) {
+		this.cancellationToken = cancellationToken;
+		this.deadline = deadline;
+		this.maxModules = maxModules;
+		this.maxSourceBytes = maxSourceBytes;
+	}
+
+	@Nonnull
+	public BundleLimits withCancellationToken(@Nonnull CancellationToken cancellationToken) {
+		return new BundleLimits(Maybe.of(cancellationToken), deadline, maxModules, maxSourceBytes);
+	}
+
+	@Nonnull
+	public BundleLimits withDeadline(@Nonnull Instant deadline) {
+		return new BundleLimits(cancellationToken, Maybe.of(deadline), maxModules, maxSourceBytes);
+	}
+
+	@Nonnull
+	public BundleLimits withMaxModules(int maxModules) {
+		return new BundleLimits(cancellationToken, deadline, Maybe.of(maxModules), maxSourceBytes);
+	}
+
+	@Nonnull
+	public BundleLimits withMaxSourceBytes(long maxSourceBytes) {
+		return new BundleLimits(cancellationToken, deadline, maxModules, Maybe.of(maxSourceBytes));
+	}
+
+	/**
+	 * @param module the module about to be loaded or bundled, or the entry point between phases
+	 * @throws BundleLimitException when the bundle has been cancelled or is past its deadline
+	 */
+	public void check(@Nonnull String module) throws BundleLimitException {
+		if (this.cancellationToken.isJust() && this.cancellationToken.fromJust().isCancelled()) {
+			throw new BundleLimitException(BundleLimitException.Reason.CANCELLED, module, "cancelled");
+		}
+		if (this.deadline.isJust() && Instant.now().isAfter(this.deadline.fromJust())) {
+			throw new BundleLimitException(BundleLimitException.Reason.DEADLINE_EXCEEDED, module, "deadline of " + this.deadline.fromJust() + " exceeded");
+		}
+	}
+
+	/**
+	 * @param module the module about to be loaded
+	 * @param modules the number of modules in the bundle, counting this one
+	 * @throws BundleLimitException when the bundle has been cancelled, is past its deadline or has too many modules
+	 */
+	public void checkModule(@Nonnull String module, int modules) throws BundleLimitException {
+		this.check(module);
+		if (this.maxModules.isJust() && modules > this.maxModules.fromJust()) {
+			throw new BundleLimitException(BundleLimitException.Reason.TOO_MANY_MODULES, module, "more than " + this.maxModules.fromJust() + " modules");
+		}
+	}
+
+	/**
+	 * Adds the source of a module to the total of a bundle, which may be loading modules concurrently.
+	 * @param module the module the source is of
+	 * @param source the module's source
+	 * @param total the bytes of source the bundle has loaded so far
+	 * @throws BundleLimitException when the bundle has loaded too much source
+	 */
+	public void addSource(@Nonnull String module, @Nonnull String source, @Nonnull AtomicLong total) throws BundleLimitException {
+		long bytes = total.addAndGet(utf8Length(source));
+		if (this.maxSourceBytes.isJust() && bytes > this.maxSourceBytes.fromJust()) {
+			throw new BundleLimitException(BundleLimitException.Reason.TOO_MUCH_SOURCE, module, "more than " + this.maxSourceBytes.fromJust() + " bytes of source");
+		}
+	}
+
+	// without encoding the string
+	private static long utf8Length(@Nonnull String string) {
+		long length = 0;
+		for (int i = 0; i < string.length(); ++i) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				length += 1;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+				length += 4;
+				++i;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+}
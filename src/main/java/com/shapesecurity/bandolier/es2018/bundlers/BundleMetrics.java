@@ -0,0 +1,190 @@
+package com.shapesecurity.bandolier.es2018.bundlers;
+
+import com.shapesecurity.functional.data.Maybe;
+
+import javax.annotation.Nonnull;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the wall time, CPU time and allocated bytes of the phases of bundling, when given to the bundler through
+ * {@link BundlerOptions#withMetrics(BundleMetrics)}. Some phases are recorded once per module ("parse",
+ * "resolveImports", "analyzeScope", "validate"), others once per bundle ("load", "bundle", "codegen"). Phases nest:
+ * "load" includes the parsing and import resolution of every module, and "bundle" includes whatever the bundler
+ * records, for {@link PiercedModuleBundler} "resolveCollisions" (which includes "analyzeScope"), "combineModules" and
+ * "removeAllUnusedDeclarations".
+ *
+ * CPU time and allocations are those of the thread that ran the phase, so a phase that hands work to the options'
+ * executor only accounts for its own thread; the per-module records account for the work done on other threads.
+ * Either is -1 where the JVM does not support measuring it. Metrics are thread-safe and may collect several bundles.
+ */
+public final class BundleMetrics {
+
+	@Nonnull
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	@Nonnull
+	private static final Measurement NONE = new Measurement(Maybe.empty(), "", Maybe.empty());
+
+	public static final class Record {
+		@Nonnull
+		public final String phase;
+		@Nonnull
+		public final Maybe<String> module;
+		// System.nanoTime() when the phase started
+		public final long startNanos;
+		public final long wallNanos;
+		public final long cpuNanos;
+		public final long allocatedBytes;
+
+		public Record(@Nonnull String phase, @Nonnull Maybe<String> module, long startNanos, long wallNanos, long cpuNanos, long allocatedBytes) {
+			this.phase = phase;
+			this.module = module;
+			this.startNanos = startNanos;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+
+	// a phase in progress on the thread that started it
+	public static final class Measurement {
+		@Nonnull
+		private final Maybe<BundleMetrics> metrics;
+		@Nonnull
+		private final String phase;
+		@Nonnull
+		private final Maybe<String> module;
+		private final long startNanos;
+		private final long startCpuNanos;
+		private final long startAllocatedBytes;
+
+		private Measurement(@Nonnull Maybe<BundleMetrics> metrics, @Nonnull String phase, @Nonnull Maybe<String> module) {
+			this.metrics = metrics;
+			this.phase = phase;
+			this.module = module;
+			this.startNanos = metrics.isJust() ? System.nanoTime() : 0;
+			this.startCpuNanos = metrics.isJust() ? cpuNanos() : 0;
+			this.startAllocatedBytes = metrics.isJust() ? allocatedBytes() : 0;
+		}
+
+		/**
+		 * Records the phase as finished. Must be called on the thread that started it.
+		 */
+		public void stop() {
+			if (this.metrics.isNothing()) {
+				return;
+			}
+			long wall = System.nanoTime() - this.startNanos;
+			long cpu = this.startCpuNanos < 0 ? -1 : cpuNanos() - this.startCpuNanos;
+			long allocated = this.startAllocatedBytes < 0 ? -1 : allocatedBytes() - this.startAllocatedBytes;
+			this.metrics.fromJust().records.add(new Record(this.phase, this.module, this.startNanos, wall, cpu, allocated));
+		}
+	}
+
+	@Nonnull
+	private final ConcurrentLinkedQueue<Record> records = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Starts measuring a phase of a whole bundle; does nothing if no metrics are given.
+	 */
+	@Nonnull
+	public static Measurement start(@Nonnull Maybe<BundleMetrics> metrics, @Nonnull String phase) {
+		return metrics.isJust() ? new Measurement(metrics, phase, Maybe.empty()) : NONE;
+	}
+
+	/**
+	 * Starts measuring a phase of a single module; does nothing if no metrics are given.
+	 */
+	@Nonnull
+	public static Measurement start(@Nonnull Maybe<BundleMetrics> metrics, @Nonnull String phase, @Nonnull String module) {
+		return metrics.isJust() ? new Measurement(metrics, phase, Maybe.of(module)) : NONE;
+	}
+
+	private static long cpuNanos() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return every record so far, in the order the phases started
+	 */
+	@Nonnull
+	public List<Record> getRecords() {
+		List<Record> records = new ArrayList<>(this.records);
+		records.sort(Comparator.comparingLong(record -> record.startNanos));
+		return records;
+	}
+
+	/**
+	 * @return the records of each phase summed up, with no module, keyed by phase in the order the phases first started
+	 */
+	@Nonnull
+	public Map<String, Record> getPhaseTotals() {
+		Map<String, Record> totals = new LinkedHashMap<>();
+		for (Record record : this.getRecords()) {
+			Record total = totals.get(record.phase);
+			totals.put(record.phase, total == null ? new Record(record.phase, Maybe.empty(), record.startNanos, record.wallNanos, record.cpuNanos, record.allocatedBytes)
+				: new Record(record.phase, Maybe.empty(), total.startNanos, total.wallNanos + record.wallNanos, sum(total.cpuNanos, record.cpuNanos), sum(total.allocatedBytes, record.allocatedBytes)));
+		}
+		return totals;
+	}
+
+	private static long sum(long a, long b) {
+		return a < 0 || b < 0 ? -1 : a + b;
+	}
+
+	public void clear() {
+		this.records.clear();
+	}
+
+	/**
+	 * @param slowestModules how many of the slowest per-module records to list
+	 * @return a human readable breakdown of the time and allocations of each phase
+	 */
+	@Nonnull
+	public String report(int slowestModules) {
+		StringBuilder report = new StringBuilder(String.format("%-28s %10s %10s %12s %8s%n", "phase", "wall ms", "cpu ms", "alloc KB", "count"));
+		Map<String, Integer> counts = new LinkedHashMap<>();
+		List<Record> moduleRecords = new ArrayList<>();
+		for (Record record : this.getRecords()) {
+			counts.merge(record.phase, 1, Integer::sum);
+			if (record.module.isJust()) {
+				moduleRecords.add(record);
+			}
+		}
+		for (Record total : this.getPhaseTotals().values()) {
+			report.append(line(total, counts.get(total.phase))).append(System.lineSeparator());
+		}
+		if (slowestModules > 0 && !moduleRecords.isEmpty()) {
+			report.append(String.format("%nslowest modules:%n"));
+			moduleRecords.sort(Comparator.comparingLong((Record record) -> record.wallNanos).reversed());
+			for (Record record : moduleRecords.subList(0, Math.min(slowestModules, moduleRecords.size()))) {
+				report.append(line(record, 1)).append("  ").append(record.module.fromJust()).append(System.lineSeparator());
+			}
+		}
+		return report.toString();
+	}
+
+	@Nonnull
+	private static String line(@Nonnull Record record, int count) {
+		return String.format("%-28s %10.1f %10s %12s %8d", record.phase, record.wallNanos / 1e6,
+			record.cpuNanos < 0 ? "n/a" : String.format("%.1f", record.cpuNanos / 1e6),
+			record.allocatedBytes < 0 ? "n/a" : Long.toString(record.allocatedBytes / 1024), count);
+	}
+}
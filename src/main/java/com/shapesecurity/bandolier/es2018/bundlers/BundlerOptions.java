@@ -1,6 +1,9 @@
 package com.shapesecurity.bandolier.es2018.bundlers;
 
+import com.shapesecurity.functional.data.Maybe;
+
 import javax.annotation.Nonnull;
+import java.util.concurrent.Executor;
 
 public final class BundlerOptions {
 
@@ -32,15 +35,48 @@ public final class BundlerOptions {
 	public final boolean throwOnCircularDependency;
 	public final boolean throwOnImportAssignment;
 	public final boolean realNamespaceObjects;
+	// when present, independent per-module work (loading, parsing, ...) is run on this executor. Output is identical either way.
+	@Nonnull
+	public final Maybe<Executor> executor;
+	// where to record the time and allocations of each phase, if anywhere
+	@Nonnull
+	public final Maybe<BundleMetrics> metrics;
+	// when set, bundlers let go of each intermediate form of the modules as soon as the next phase no longer needs it,
+	// keeping no scope analyses for later builds. The module map given to them is never modified. Output is identical
+	// either way.
+	public final boolean lowMemory;
+	// where to reuse the early errors of modules validated before, if anywhere. Only Bundler, which knows the sources of
+	// the modules it loads, uses it; modules handed to a bundler directly are validated afresh.
+	@Nonnull
+	public final Maybe<EarlyErrorCache> earlyErrorCache;
+	// the length from which JSON modules are exported as a JSON.parse call on a string rather than as an object literal
+	@Nonnull
+	public final Maybe<Integer> jsonParseThreshold;
+	@Nonnull
+	public final BundleLimits limits;
+	// when set, the shortest of the names given to renamed variables go to those that appear most often in the bundle.
+	// Only PiercedModuleBundler renames variables; the bundlers built on StandardModuleBundler reject this option.
+	public final boolean frequencyRankedNames;
 
 
 	public BundlerOptions(@Nonnull ImportUnresolvedResolutionStrategy importUnresolvedResolutionStrategy, @Nonnull ExportStrategy exportStrategy, @Nonnull DangerLevel dangerLevel, boolean throwOnCircularDependency, boolean throwOnImportAssignment, boolean realNamespaceObjects) {
+		this(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, Maybe.empty(), Maybe.empty(), false, Maybe.empty(), Maybe.empty(), BundleLimits.NONE, false);
+	}
+
+	private BundlerOptions(@Nonnull ImportUnresolvedResolutionStrategy importUnresolvedResolutionStrategy, @Nonnull ExportStrategy exportStrategy, @Nonnull DangerLevel dangerLevel, boolean throwOnCircularDependency, boolean throwOnImportAssignment, boolean realNamespaceObjects, @Nonnull Maybe<Executor> executor, @Nonnull Maybe<BundleMetrics> metrics, boolean lowMemory, @Nonnull Maybe<EarlyErrorCache> earlyErrorCache, @Nonnull Maybe<Integer> jsonParseThreshold, @Nonnull BundleLimits limits, boolean frequencyRankedNames) {
 		this.importUnresolvedResolutionStrategy = importUnresolvedResolutionStrategy;
 		this.exportStrategy = exportStrategy;
 		this.dangerLevel = dangerLevel;
 		this.throwOnCircularDependency = throwOnCircularDependency;
 		this.throwOnImportAssignment = throwOnImportAssignment;
 		this.realNamespaceObjects = realNamespaceObjects;
+		this.executor = executor;
+		this.metrics = metrics;
+		this.lowMemory = lowMemory;
+		this.earlyErrorCache = earlyErrorCache;
+		this.jsonParseThreshold = jsonParseThreshold;
+		this.limits = limits;
+		this.frequencyRankedNames = frequencyRankedNames;
 	}
 
 	public static final BundlerOptions NODE_OPTIONS = new BundlerOptions(ImportUnresolvedResolutionStrategy.DEFAULT_TO_UNDEFINED, ExportStrategy.ALL_GLOBALS, DangerLevel.SAFE, false, false, true);
@@ -50,22 +86,63 @@ public final class BundlerOptions {
 	public static final BundlerOptions DEFAULT_OPTIONS = new BundlerOptions(ImportUnresolvedResolutionStrategy.COMPILE_ERROR, ExportStrategy.EXPLICIT, DangerLevel.SAFE, true, true, true);
 
 	public BundlerOptions withDangerLevel(@Nonnull DangerLevel dangerLevel) {
-		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects);
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
 	}
 
 	public BundlerOptions withThrowOnCircularDependency(boolean throwOnCircularDependency) {
-		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects);
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
 	}
 
 	public BundlerOptions withThrowOnImportAssignment(boolean throwOnImportAssignment) {
-		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects);
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
 	}
 
 	public BundlerOptions withRealNamespaceObjects(boolean realNamespaceObjects) {
-		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects);
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
 	}
 
 	public BundlerOptions withExportStrategy(ExportStrategy exportStrategy) {
-		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects);
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
+	}
+
+	public BundlerOptions withExecutor(@Nonnull Executor executor) {
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, Maybe.of(executor), metrics, lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
+	}
+
+	public BundlerOptions withMetrics(@Nonnull BundleMetrics metrics) {
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, Maybe.of(metrics), lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
+	}
+
+	public BundlerOptions withLowMemory(boolean lowMemory) {
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
+	}
+
+	public BundlerOptions withEarlyErrorCache(@Nonnull EarlyErrorCache earlyErrorCache) {
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, Maybe.of(earlyErrorCache), jsonParseThreshold, limits, frequencyRankedNames);
+	}
+
+	public BundlerOptions withJsonParseThreshold(int jsonParseThreshold) {
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, earlyErrorCache, Maybe.of(jsonParseThreshold), limits, frequencyRankedNames);
+	}
+
+	public BundlerOptions withLimits(@Nonnull BundleLimits limits) {
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
+	}
+
+	public BundlerOptions withFrequencyRankedNames(boolean frequencyRankedNames) {
+		return new BundlerOptions(importUnresolvedResolutionStrategy, exportStrategy, dangerLevel, throwOnCircularDependency, throwOnImportAssignment, realNamespaceObjects, executor, metrics, lowMemory, earlyErrorCache, jsonParseThreshold, limits, frequencyRankedNames);
+	}
+
+	/**
+	 * @return a description of every option that can affect the bundle, for keying caches of bundler output; options
+	 * that only change how the bundle is produced, like the executor, metrics, low memory mode, early error cache and
+	 * limits, are left out
+	 */
+	@Nonnull
+	public String outputFingerprint() {
+		return "importUnresolvedResolutionStrategy=" + importUnresolvedResolutionStrategy + ",exportStrategy=" + exportStrategy
+			+ ",dangerLevel=" + dangerLevel + ",throwOnCircularDependency=" + throwOnCircularDependency
+			+ ",throwOnImportAssignment=" + throwOnImportAssignment + ",realNamespaceObjects=" + realNamespaceObjects
+			+ ",jsonParseThreshold=" + jsonParseThreshold.map(String::valueOf).orJust("none") + ",frequencyRankedNames=" + frequencyRankedNames;
 	}
 }
@@ -0,0 +1,19 @@
+package com.shapesecurity.bandolier.es2018.bundlers;
+
+/**
+ * Lets another thread stop a bundle in progress, through {@link BundleLimits#withCancellationToken(CancellationToken)}.
+ * Bundling stops at the next module or phase with a {@link com.shapesecurity.bandolier.es2018.loader.BundleLimitException}.
+ * Once cancelled, a token stays cancelled.
+ */
+public final class CancellationToken {
+
+	private volatile boolean cancelled = false;
+
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+}
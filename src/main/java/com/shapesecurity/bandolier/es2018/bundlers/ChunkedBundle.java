@@ -0,0 +1,27 @@
+package com.shapesecurity.bandolier.es2018.bundlers;
+
+import com.shapesecurity.shift.es2018.ast.Script;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// the output of ChunkingModuleBundler: one script per entry point plus the shared chunks they depend on
+public final class ChunkedBundle {
+	// keyed by entry point, in the order the entry points were given
+	@Nonnull
+	public final Map<String, Script> entries;
+	// keyed by chunk name
+	@Nonnull
+	public final Map<String, Script> chunks;
+	// the chunks each entry point needs, which must all be run before the entry point's script
+	@Nonnull
+	public final Map<String, List<String>> entryChunks;
+
+	public ChunkedBundle(@Nonnull Map<String, Script> entries, @Nonnull Map<String, Script> chunks, @Nonnull Map<String, List<String>> entryChunks) {
+		this.entries = Collections.unmodifiableMap(entries);
+		this.chunks = Collections.unmodifiableMap(chunks);
+		this.entryChunks = Collections.unmodifiableMap(entryChunks);
+	}
+}
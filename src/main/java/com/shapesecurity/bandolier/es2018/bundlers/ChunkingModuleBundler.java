@@ -0,0 +1,115 @@
+package com.shapesecurity.bandolier.es2018.bundlers;
+
+import com.shapesecurity.bandolier.es2018.ImportMappingRewriter;
+import com.shapesecurity.bandolier.es2018.loader.BundleLimitException;
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.ast.Script;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Bundles several entry points so that modules imported by more than one of them are emitted only once. Modules are
+ * grouped by the set of entry points that import them: those imported by a single entry point go into its script, and
+ * each set of two or more entry points gets a shared chunk, named "shared-" followed by the (zero-based) positions of
+ * those entry points, e.g. "shared-0-2".
+ *
+ * The output uses the runtime of {@link StandardModuleBundler}. Chunks define their modules in a registry object on
+ * the global object and entry point scripts look modules up in it, so a page runs the chunks listed for an entry point
+ * (in any order) and then the entry point's script. Module names are numbers assigned over all entry points together,
+ * so they agree between chunks and entry points.
+ */
+public class ChunkingModuleBundler {
+
+	@Nonnull
+	public static final String DEFAULT_REGISTRY = "__bandolierModules";
+
+	@Nonnull
+	private final String registry;
+
+	public ChunkingModuleBundler() {
+		this(DEFAULT_REGISTRY);
+	}
+
+	/**
+	 * @param registry the name of the global property holding the module registry; must be an identifier name
+	 */
+	public ChunkingModuleBundler(@Nonnull String registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * @param options options object
+	 * @param entries the module map of each entry point, keyed by entry point, as for
+	 * {@link IModuleBundler#bundleEntrypoints}
+	 * @return the entry point scripts and shared chunks
+	 * @throws BundleLimitException when the build is cancelled or runs past its deadline
+	 * @throws IllegalArgumentException when the options ask for frequency ranked names, which need renaming
+	 */
+	@Nonnull
+	public ChunkedBundle bundleEntrypoints(@Nonnull BundlerOptions options, @Nonnull Map<String, Map<String, Module>> entries) throws BundleLimitException {
+		StandardModuleBundler.checkOptions(options);
+		List<String> entryList = new ArrayList<>(entries.keySet());
+		LinkedHashMap<String, Module> allModules = new LinkedHashMap<>();
+		Map<String, List<Integer>> importedBy = new HashMap<>();
+		for (int i = 0; i < entryList.size(); ++i) {
+			for (Map.Entry<String, Module> module : entries.get(entryList.get(i)).entrySet()) {
+				allModules.putIfAbsent(module.getKey(), module.getValue());
+				importedBy.computeIfAbsent(module.getKey(), k -> new ArrayList<>()).add(i);
+			}
+		}
+
+		Map<String, String> pathMapping = new HashMap<>();
+		Integer moduleCount = 0;
+		for (String absPath : allModules.keySet()) {
+			pathMapping.put(absPath, (++moduleCount).toString());
+		}
+		ImportMappingRewriter importMappingRewriter = new ImportMappingRewriter(pathMapping);
+
+		List<LinkedHashMap<String, Module>> ownModules = new ArrayList<>();
+		for (int i = 0; i < entryList.size(); ++i) {
+			ownModules.add(new LinkedHashMap<>());
+		}
+		LinkedHashMap<String, LinkedHashMap<String, Module>> sharedModules = new LinkedHashMap<>();
+		Map<String, List<Integer>> chunkImporters = new HashMap<>();
+		for (Map.Entry<String, Module> module : allModules.entrySet()) {
+			options.limits.check(module.getKey());
+			List<Integer> importers = importedBy.get(module.getKey());
+			Module rewritten = importMappingRewriter.rewrite(module.getValue());
+			if (importers.size() == 1) {
+				ownModules.get(importers.get(0)).put(pathMapping.get(module.getKey()), rewritten);
+			} else {
+				String chunk = "shared-" + importers.stream().map(Object::toString).collect(Collectors.joining("-"));
+				sharedModules.computeIfAbsent(chunk, k -> new LinkedHashMap<>()).put(pathMapping.get(module.getKey()), rewritten);
+				chunkImporters.put(chunk, importers);
+			}
+		}
+
+		StandardModuleBundler standard = new StandardModuleBundler();
+		Map<String, Script> chunks = new LinkedHashMap<>();
+		for (Map.Entry<String, LinkedHashMap<String, Module>> chunk : sharedModules.entrySet()) {
+			options.limits.check(chunk.getKey());
+			chunks.put(chunk.getKey(), standard.bundleChunk(chunk.getValue(), this.registry));
+		}
+		Map<String, Script> scripts = new LinkedHashMap<>();
+		Map<String, List<String>> entryChunks = new LinkedHashMap<>();
+		for (int i = 0; i < entryList.size(); ++i) {
+			String entry = entryList.get(i);
+			options.limits.check(entry);
+			scripts.put(entry, standard.bundleEntrypoint(pathMapping.get(entry), ownModules.get(i), this.registry));
+			List<String> needed = new ArrayList<>();
+			for (String chunk : sharedModules.keySet()) {
+				if (chunkImporters.get(chunk).contains(i)) {
+					needed.add(chunk);
+				}
+			}
+			entryChunks.put(entry, needed);
+		}
+		return new ChunkedBundle(scripts, chunks, entryChunks);
+	}
+}
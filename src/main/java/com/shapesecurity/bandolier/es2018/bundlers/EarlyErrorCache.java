@@ -0,0 +1,180 @@
+package com.shapesecurity.bandolier.es2018.bundlers;
+
+import com.shapesecurity.bandolier.es2018.loader.ContentHash;
+import com.shapesecurity.functional.data.ImmutableList;
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.ast.Node;
+import com.shapesecurity.shift.es2018.parser.EarlyError;
+import com.shapesecurity.shift.es2018.parser.EarlyErrorChecker;
+import com.shapesecurity.shift.es2018.reducer.Flattener;
+
+import javax.annotation.Nonnull;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The early errors of modules, so that a module is validated once however often it is loaded or bundled; pass one to
+ * the bundlers with {@link BundlerOptions#withEarlyErrorCache(EarlyErrorCache)}. Modules are keyed by a hash of their
+ * path and source, and only the messages of their errors are kept, along with the position of each error's node in the
+ * module, so that errors found again refer to the nodes of the module being validated.
+ *
+ * The cache may be bounded by the approximate size of what it holds, in which case the least recently used modules are
+ * evicted first. Lookups never block; only adding a module does.
+ */
+public final class EarlyErrorCache {
+
+	private static final class Entry {
+		// positions of the nodes of the errors in the flattened module
+		@Nonnull
+		final int[] nodes;
+		@Nonnull
+		final String[] messages;
+		final long size;
+		volatile long lastAccess;
+
+		Entry(@Nonnull String key, @Nonnull int[] nodes, @Nonnull String[] messages, long lastAccess) {
+			this.nodes = nodes;
+			this.messages = messages;
+			long size = 64 + 2L * key.length() + 4L * nodes.length;
+			for (String message : messages) {
+				size += 2L * message.length();
+			}
+			this.size = size;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	private final long maxBytes;
+	@Nonnull
+	private final ConcurrentHashMap<String, Entry> errors = new ConcurrentHashMap<>();
+	@Nonnull
+	private final AtomicLong tick = new AtomicLong();
+	// guarded by this
+	private long sizeInBytes = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates an unbounded cache.
+	 */
+	public EarlyErrorCache() {
+		this(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a cache holding the errors of modules up to (approximately) the given number of bytes.
+	 * @param maxBytes the size budget
+	 */
+	public EarlyErrorCache(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes must not be negative");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Validates a module, or finds the errors of a module previously validated with the same path and source.
+	 * @param path the path the module was loaded from
+	 * @param source the source the module was parsed from
+	 * @param module the module
+	 * @return the early errors of the module, referring to its nodes
+	 */
+	@Nonnull
+	public ImmutableList<EarlyError> validate(@Nonnull String path, @Nonnull String source, @Nonnull Module module) {
+		String key = ContentHash.of(path + '\0' + source);
+		Entry entry = this.errors.get(key);
+		if (entry != null) {
+			this.hits.incrementAndGet();
+			if (this.maxBytes != Long.MAX_VALUE) {
+				entry.lastAccess = this.tick.incrementAndGet();
+			}
+			if (entry.nodes.length == 0) {
+				return ImmutableList.empty();
+			}
+			Node[] nodes = Flattener.flatten(module).toArray(new Node[0]);
+			ImmutableList<EarlyError> found = ImmutableList.empty();
+			for (int i = entry.nodes.length - 1; i >= 0; --i) {
+				found = found.cons(new EarlyError(nodes[entry.nodes[i]], entry.messages[i]));
+			}
+			return found;
+		}
+		this.misses.incrementAndGet();
+		// validated outside of any lock; a racing validation of the same module loses
+		ImmutableList<EarlyError> found = EarlyErrorChecker.validate(module);
+		int[] nodes = new int[found.length];
+		String[] messages = new String[found.length];
+		if (found.isNotEmpty()) {
+			Map<Node, Integer> positions = new IdentityHashMap<>();
+			int position = 0;
+			for (Node node : Flattener.flatten(module)) {
+				positions.putIfAbsent(node, position++);
+			}
+			int i = 0;
+			for (EarlyError error : found) {
+				Integer node = positions.get(error.node);
+				if (node == null) {
+					return found;
+				}
+				nodes[i] = node;
+				messages[i++] = error.message;
+			}
+		}
+		Entry added = new Entry(key, nodes, messages, this.tick.incrementAndGet());
+		if (added.size <= this.maxBytes) {
+			this.add(key, added);
+		}
+		return found;
+	}
+
+	private synchronized void add(@Nonnull String key, @Nonnull Entry entry) {
+		if (this.errors.putIfAbsent(key, entry) != null) {
+			return;
+		}
+		this.sizeInBytes += entry.size;
+		while (this.sizeInBytes > this.maxBytes) {
+			// misses each cost a validation, so a scan for the victim is cheap enough
+			Map.Entry<String, Entry> victim = null;
+			for (Map.Entry<String, Entry> candidate : this.errors.entrySet()) {
+				if (candidate.getValue() != entry && (victim == null || candidate.getValue().lastAccess < victim.getValue().lastAccess)) {
+					victim = candidate;
+				}
+			}
+			this.errors.remove(victim.getKey());
+			this.sizeInBytes -= victim.getValue().size;
+			this.evictions.incrementAndGet();
+		}
+	}
+
+	public synchronized void clear() {
+		this.errors.clear();
+		this.sizeInBytes = 0;
+	}
+
+	public int size() {
+		return this.errors.size();
+	}
+
+	public synchronized long getSizeInBytes() {
+		return this.sizeInBytes;
+	}
+
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	public long getEvictionCount() {
+		return this.evictions.get();
+	}
+}
@@ -1,12 +1,18 @@
 package com.shapesecurity.bandolier.es2018.bundlers;
 
+import com.shapesecurity.bandolier.es2018.ParallelHelper;
+import com.shapesecurity.functional.F;
 import com.shapesecurity.functional.Pair;
 import com.shapesecurity.functional.data.ImmutableList;
+import com.shapesecurity.functional.data.Maybe;
 import com.shapesecurity.shift.es2018.ast.Module;
 import com.shapesecurity.shift.es2018.ast.Script;
 import com.shapesecurity.shift.es2018.parser.EarlyError;
+import com.shapesecurity.shift.es2018.parser.EarlyErrorChecker;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public interface IModuleBundler {
@@ -15,4 +21,52 @@ public interface IModuleBundler {
 
 	@Nonnull
 	Pair<Script, ImmutableList<EarlyError>> bundleEntrypointWithEarlyErrors(BundlerOptions options, String entry, Map<String, Module> modules) throws Exception;
+
+	/**
+	 * Bundles several entry points at once. The module maps of different entry points share the module instances of
+	 * the modules they have in common, which bundlers may use to do per-module work only once.
+	 * @param options options object
+	 * @param entries the module map of each entry point, keyed by entry point
+	 * @return the bundle of each entry point, in the order of the given entries
+	 * @throws Exception when any of the entry points fails to bundle
+	 */
+	@Nonnull
+	default Map<String, Script> bundleEntrypoints(BundlerOptions options, Map<String, Map<String, Module>> entries) throws Exception {
+		Map<String, Script> scripts = new LinkedHashMap<>();
+		for (Map.Entry<String, Map<String, Module>> entry : entries.entrySet()) {
+			scripts.put(entry.getKey(), this.bundleEntrypoint(options, entry.getKey(), entry.getValue()));
+		}
+		return scripts;
+	}
+
+	/**
+	 * Validates modules concurrently on the options' executor, if any.
+	 * @param options options object
+	 * @param modules the modules to validate, keyed by path
+	 * @return the early errors of all of the modules, in the order of the modules
+	 */
+	@Nonnull
+	static ImmutableList<EarlyError> earlyErrors(@Nonnull BundlerOptions options, @Nonnull Map<String, Module> modules) {
+		return earlyErrors(options, modules, path -> Maybe.empty());
+	}
+
+	/**
+	 * Validates modules concurrently on the options' executor, if any, reusing the errors in the options' early error
+	 * cache, if any, for the modules whose source is known.
+	 * @param options options object
+	 * @param modules the modules to validate, keyed by path
+	 * @param sources the source of each module, by path, if known
+	 * @return the early errors of all of the modules, in the order of the modules
+	 */
+	@Nonnull
+	static ImmutableList<EarlyError> earlyErrors(@Nonnull BundlerOptions options, @Nonnull Map<String, Module> modules, @Nonnull F<String, Maybe<String>> sources) {
+		ImmutableList<Map.Entry<String, Module>> entries = ImmutableList.from(new ArrayList<>(modules.entrySet()));
+		return ParallelHelper.map(options.executor, entries, entry -> {
+			BundleMetrics.Measurement validate = BundleMetrics.start(options.metrics, "validate", entry.getKey());
+			Maybe<String> source = options.earlyErrorCache.isJust() ? sources.apply(entry.getKey()) : Maybe.empty();
+			ImmutableList<EarlyError> errors = source.isJust() ? options.earlyErrorCache.fromJust().validate(entry.getKey(), source.fromJust(), entry.getValue()) : EarlyErrorChecker.validate(entry.getValue());
+			validate.stop();
+			return errors;
+		}).foldLeft(ImmutableList::append, ImmutableList.empty());
+	}
 }
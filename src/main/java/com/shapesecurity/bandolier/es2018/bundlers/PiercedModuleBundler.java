@@ -1,10 +1,14 @@
 package com.shapesecurity.bandolier.es2018.bundlers;
 
 import com.shapesecurity.bandolier.es2018.ModuleWrapper;
+import com.shapesecurity.bandolier.es2018.ParallelHelper;
+import com.shapesecurity.bandolier.es2018.loader.BundleLimitException;
 import com.shapesecurity.bandolier.es2018.transformations.DeadCodeElimination;
 import com.shapesecurity.bandolier.es2018.transformations.ImportExportConnector;
+import com.shapesecurity.bandolier.es2018.transformations.ScopeAnalysisCache;
 import com.shapesecurity.bandolier.es2018.transformations.VariableCollisionResolver;
 import com.shapesecurity.functional.Pair;
+import com.shapesecurity.functional.Tuple3;
 import com.shapesecurity.functional.data.HashTable;
 import com.shapesecurity.functional.data.ImmutableList;
 import com.shapesecurity.functional.data.Maybe;
@@ -23,18 +27,111 @@ import com.shapesecurity.shift.es2018.ast.Script;
 import com.shapesecurity.shift.es2018.ast.ThisExpression;
 import com.shapesecurity.shift.es2018.ast.VariableDeclarationStatement;
 import com.shapesecurity.shift.es2018.parser.EarlyError;
-import com.shapesecurity.shift.es2018.parser.EarlyErrorChecker;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletionException;
 
 // merges modules by resolving variable collision, scheduling, and merging modules.
 public class PiercedModuleBundler implements IModuleBundler {
 
+	@Nonnull
+	private final Maybe<ScopeAnalysisCache> analyses;
+
+	public PiercedModuleBundler() {
+		this.analyses = Maybe.empty();
+	}
+
+	/**
+	 * Creates a bundler that keeps scope analyses between builds, for modules passed to it again as the same instances
+	 * (as {@link com.shapesecurity.bandolier.es2018.BundleSession} does). Each build forgets the analyses of modules
+	 * not passed to it.
+	 * @param analyses the cache to keep analyses in
+	 */
+	public PiercedModuleBundler(@Nonnull ScopeAnalysisCache analyses) {
+		this.analyses = Maybe.of(analyses);
+	}
+
 	@Override
 	@Nonnull
-	public Script bundleEntrypoint(BundlerOptions options, String entry, Map<String, Module> modules) {
+	public Script bundleEntrypoint(BundlerOptions options, String entry, Map<String, Module> modules) throws BundleLimitException {
+		ScopeAnalysisCache analyses = this.analyses.orJust(new ScopeAnalysisCache());
+		Script script = bundle(options, entry, modules, analyses, true);
+		analyses.retainAll(modules.values());
+		return script;
+	}
+
+	// Modules shared between entry points are analysed once. The entry points are linked concurrently on the
+	// options' executor, in which case the per-module work within each entry point runs sequentially.
+	@Override
+	@Nonnull
+	public Map<String, Script> bundleEntrypoints(BundlerOptions options, Map<String, Map<String, Module>> entries) throws BundleLimitException {
+		ScopeAnalysisCache analyses = this.analyses.orJust(new ScopeAnalysisCache());
+		ImmutableList<Map.Entry<String, Map<String, Module>>> entryList = ImmutableList.from(new ArrayList<>(entries.entrySet()));
+		ImmutableList<Script> scripts;
+		try {
+			scripts = ParallelHelper.map(options.executor, entryList, entry -> {
+				try {
+					return bundle(options, entry.getKey(), entry.getValue(), analyses, false);
+				} catch (BundleLimitException e) {
+					throw new CompletionException(e);
+				}
+			});
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof BundleLimitException) {
+				throw (BundleLimitException) e.getCause();
+			}
+			throw e;
+		}
+		Map<String, Script> bundles = new LinkedHashMap<>();
+		List<Module> modules = new ArrayList<>();
+		for (Pair<Map.Entry<String, Map<String, Module>>, Script> pair : entryList.zipWith(Pair::of, scripts)) {
+			bundles.put(pair.left.getKey(), pair.right);
+			modules.addAll(pair.left.getValue().values());
+		}
+		analyses.retainAll(modules);
+		return bundles;
+	}
+
+	@Nonnull
+	private static Script bundle(@Nonnull BundlerOptions options, @Nonnull String entry, @Nonnull Map<String, Module> modules, @Nonnull ScopeAnalysisCache analyses, boolean pruneAnalyses) throws BundleLimitException {
+		options.limits.check(entry);
+		Pair<Script, String> scriptAndGlobalParameter = link(options, entry, modules, analyses, pruneAnalyses);
+		options.limits.check(entry);
+		BundleMetrics.Measurement eliminate = BundleMetrics.start(options.metrics, "removeAllUnusedDeclarations");
+		Script combined = DeadCodeElimination.removeAllUnusedDeclarations(scriptAndGlobalParameter.left);
+		eliminate.stop();
+		return new Script(ImmutableList.empty(), ImmutableList.of(
+				new ExpressionStatement(new CallExpression(
+						new FunctionExpression(false, false, Maybe.empty(), new FormalParameters(ImmutableList.of(new BindingIdentifier(scriptAndGlobalParameter.right)), Maybe.empty()),
+								new FunctionBody(ImmutableList.of(new Directive("use strict")), combined.statements)
+						),
+						ImmutableList.of(new ThisExpression())
+				))
+		));
+	}
+
+	// The phases up to dead code elimination are kept out of bundle, so that nothing they produce is reachable from
+	// its frame once they are done. Analyses can only be pruned while no other entry point is being linked with them.
+	@Nonnull
+	private static Pair<Script, String> link(@Nonnull BundlerOptions options, @Nonnull String entry, @Nonnull Map<String, Module> modules, @Nonnull ScopeAnalysisCache analyses, boolean pruneAnalyses) throws BundleLimitException {
+		Tuple3<ModuleWrapper, VariableCollisionResolver.ResolvedResult, HashTable<String, ModuleWrapper>> resolved = resolveCollisions(options, entry, modules, analyses, pruneAnalyses);
+		options.limits.check(entry);
+		BundleMetrics.Measurement combine = BundleMetrics.start(options.metrics, "combineModules");
+		Pair<Script, String> scriptAndGlobalParameter = ImportExportConnector.combineModules(options, resolved.a, resolved.b, resolved.c);
+		combine.stop();
+		if (options.lowMemory && pruneAnalyses) {
+			analyses.clear();
+		}
+		return scriptAndGlobalParameter;
+	}
+
+	// the renamed entry point, the result of collision resolution and the renamed modules by specifier
+	@Nonnull
+	private static Tuple3<ModuleWrapper, VariableCollisionResolver.ResolvedResult, HashTable<String, ModuleWrapper>> resolveCollisions(@Nonnull BundlerOptions options, @Nonnull String entry, @Nonnull Map<String, Module> modules, @Nonnull ScopeAnalysisCache analyses, boolean pruneAnalyses) {
 		HashTable<String, ModuleWrapper> newModules = HashTable.emptyUsingEquality();
 		for (Map.Entry<String, Module> mapEntry : modules.entrySet()) {
 			Module module = mapEntry.getValue();
@@ -52,26 +149,25 @@ public class PiercedModuleBundler implements IModuleBundler {
 			}
 			newModules = newModules.put(mapEntry.getKey(), new ModuleWrapper(module));
 		}
-		VariableCollisionResolver.ResolvedResult result = VariableCollisionResolver.resolveCollisions(newModules);
+		BundleMetrics.Measurement resolve = BundleMetrics.start(options.metrics, "resolveCollisions");
+		VariableCollisionResolver.ResolvedResult result = VariableCollisionResolver.resolveCollisions(options, newModules, analyses);
+		resolve.stop();
 		HashTable<String, ModuleWrapper> specifierToModule = newModules.map(module -> result.moduleMap.get(module).fromJust());
-		Pair<Script, String> scriptAndGlobalParameter = ImportExportConnector.combineModules(options, result.moduleMap.get(newModules.get(entry).fromJust()).fromJust(), result, specifierToModule);
-		Script combined = scriptAndGlobalParameter.left;
-		combined = DeadCodeElimination.removeAllUnusedDeclarations(combined);
-		return new Script(ImmutableList.empty(), ImmutableList.of(
-				new ExpressionStatement(new CallExpression(
-						new FunctionExpression(false, false, Maybe.empty(), new FormalParameters(ImmutableList.of(new BindingIdentifier(scriptAndGlobalParameter.right)), Maybe.empty()),
-								new FunctionBody(ImmutableList.of(new Directive("use strict")), combined.statements)
-						),
-						ImmutableList.of(new ThisExpression())
-				))
-		));
+		ModuleWrapper entryModule = specifierToModule.get(entry).fromJust();
+		if (!options.lowMemory) {
+			return new Tuple3<>(entryModule, result, specifierToModule);
+		}
+		// combining only needs the renamed modules, so the result no longer refers to the modules they were renamed from
+		HashTable<ModuleWrapper, ModuleWrapper> renamed = specifierToModule.foldLeft((acc, pair) -> acc.put(pair.right, pair.right), HashTable.emptyUsingIdentity());
+		if (pruneAnalyses) {
+			analyses.retainAll(specifierToModule.entries().map(pair -> pair.right.module).toArrayList());
+		}
+		return new Tuple3<>(entryModule, new VariableCollisionResolver.ResolvedResult(renamed, result.nameGenerator, result.renamingMap, analyses), specifierToModule);
 	}
 
-
-
 	@Override
 	@Nonnull
-	public Pair<Script, ImmutableList<EarlyError>> bundleEntrypointWithEarlyErrors(BundlerOptions options, String entry, Map<String, Module> modules) {
-		return Pair.of(bundleEntrypoint(options, entry, modules), ImmutableList.from(modules.values().stream().map(EarlyErrorChecker::validate).collect(Collectors.toList())).foldLeft(ImmutableList::append, ImmutableList.empty()));
+	public Pair<Script, ImmutableList<EarlyError>> bundleEntrypointWithEarlyErrors(BundlerOptions options, String entry, Map<String, Module> modules) throws BundleLimitException {
+		return Pair.of(bundleEntrypoint(options, entry, modules), IModuleBundler.earlyErrors(options, modules));
 	}
 }
@@ -2,6 +2,7 @@ package com.shapesecurity.bandolier.es2018.bundlers;
 
 import com.shapesecurity.bandolier.es2018.ImportExportTransformer;
 import com.shapesecurity.bandolier.es2018.ImportMappingRewriter;
+import com.shapesecurity.bandolier.es2018.loader.BundleLimitException;
 import com.shapesecurity.functional.Pair;
 import com.shapesecurity.functional.data.ImmutableList;
 import com.shapesecurity.functional.data.Maybe;
@@ -50,10 +51,10 @@ import com.shapesecurity.shift.es2018.ast.VariableDeclarator;
 import com.shapesecurity.shift.es2018.ast.operators.BinaryOperator;
 import com.shapesecurity.shift.es2018.ast.operators.UnaryOperator;
 import com.shapesecurity.shift.es2018.parser.EarlyError;
-import com.shapesecurity.shift.es2018.parser.EarlyErrorChecker;
 
 import javax.annotation.Nonnull;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
@@ -61,36 +62,79 @@ import java.util.stream.Collectors;
 
 public class StandardModuleBundler implements IModuleBundler {
 
-	private final Map<String, String> pathMapping = new HashMap<>();
-
 	// This function is only guaranteed to be deterministic if the provided `modules` map has deterministic ordering
 	@Nonnull
 	@Override
-	public Script bundleEntrypoint(BundlerOptions options, String entry, Map<String, Module> modules) {
+	public Script bundleEntrypoint(BundlerOptions options, String entry, Map<String, Module> modules) throws BundleLimitException {
+		checkOptions(options);
 		// rather than bundle with absolute paths (a potential information leak) create a mapping
 		// of absolute paths to a unique name
+		Map<String, String> pathMapping = new HashMap<>();
 		Integer moduleCount = 0;
 		for (String absPath : modules.keySet()) {
-			this.pathMapping.put(absPath, (++moduleCount).toString());
+			pathMapping.put(absPath, (++moduleCount).toString());
 		}
 
-		ImportMappingRewriter importMappingRewriter = new ImportMappingRewriter(this.pathMapping);
+		ImportMappingRewriter importMappingRewriter = new ImportMappingRewriter(pathMapping);
 		LinkedHashMap<String, Module> rewrittenModules = new LinkedHashMap<>();
-		modules.forEach((absPath, m) -> rewrittenModules.put(this.pathMapping.get(absPath), importMappingRewriter.rewrite(m)));
-		ExpressionStatement bundled = anonymousFunctionCall(this.pathMapping.get(entry), rewrittenModules);
+		for (Map.Entry<String, Module> module : modules.entrySet()) {
+			options.limits.check(module.getKey());
+			rewrittenModules.put(pathMapping.get(module.getKey()), importMappingRewriter.rewrite(module.getValue()));
+		}
+		options.limits.check(entry);
+		ExpressionStatement bundled = anonymousFunctionCall(pathMapping.get(entry), rewrittenModules, Maybe.empty(), options.lowMemory);
 		return new Script(ImmutableList.empty(), ImmutableList.of(bundled));
 	}
 
+	// modules keep their own scopes here, so no variables are renamed
+	static void checkOptions(@Nonnull BundlerOptions options) {
+		if (options.frequencyRankedNames) {
+			throw new IllegalArgumentException("Frequency ranked names are only supported by PiercedModuleBundler");
+		}
+	}
+
+	// A bundle of the given modules, already named, whose module table is the given global registry rather than a
+	// fresh object, so that it can require modules defined by chunks.
+	@Nonnull
+	Script bundleEntrypoint(@Nonnull String rootPath, @Nonnull LinkedHashMap<String, Module> rewrittenModules, @Nonnull String registry) {
+		return new Script(ImmutableList.empty(), ImmutableList.of(anonymousFunctionCall(rootPath, rewrittenModules, Maybe.of(registry), false)));
+	}
+
+	// A script that only defines the given modules, already named, in the given global registry.
+	@Nonnull
+	Script bundleChunk(@Nonnull LinkedHashMap<String, Module> rewrittenModules, @Nonnull String registry) {
+		ImmutableList<Statement> statements = ImmutableList.from(rewrittenModules.entrySet().stream().map(x -> {
+			Node module = ImportExportTransformer.transformModule(x.getValue());
+			return (Statement) requireDefineStatement(x.getKey(), (Module) module);
+		}).collect(Collectors.toList()));
+		statements = statements.cons(requireDefineDefinition());
+		statements = statements.cons(initializeRequireModules(Maybe.of(registry)));
+		// the modules are run by the require function of whichever bundle requires them first
+		// function require(file,parentModule){return parentModule.require(file,parentModule);}
+		statements = statements.cons(new FunctionDeclaration(false, false, new BindingIdentifier("require"),
+				new FormalParameters(ImmutableList.of(new BindingIdentifier("file"), new BindingIdentifier("parentModule")), Maybe.empty()),
+				new FunctionBody(ImmutableList.empty(), ImmutableList.of(new ReturnStatement(Maybe.of(new CallExpression(
+						new StaticMemberExpression(new IdentifierExpression("parentModule"), "require"),
+						ImmutableList.of(new IdentifierExpression("file"), new IdentifierExpression("parentModule"))
+				)))))
+		));
+		FunctionBody body = new FunctionBody(ImmutableList.of(new Directive("use strict")), statements);
+		FunctionExpression function = new FunctionExpression(false, false, Maybe.empty(), new FormalParameters(ImmutableList.of(new BindingIdentifier("global")), Maybe.empty()), body);
+		CallExpression call = new CallExpression(new StaticMemberExpression(function, "call"), ImmutableList.of(new ThisExpression(), new ThisExpression()));
+		return new Script(ImmutableList.empty(), ImmutableList.of(new ExpressionStatement(call)));
+	}
+
 	@Override
 	@Nonnull
-	public Pair<Script, ImmutableList<EarlyError>> bundleEntrypointWithEarlyErrors(BundlerOptions options, String entry, Map<String, Module> modules) {
-		return Pair.of(bundleEntrypoint(options, entry, modules), ImmutableList.from(modules.values().stream().map(EarlyErrorChecker::validate).collect(Collectors.toList())).foldLeft(ImmutableList::append, ImmutableList.empty()));
+	public Pair<Script, ImmutableList<EarlyError>> bundleEntrypointWithEarlyErrors(BundlerOptions options, String entry, Map<String, Module> modules) throws BundleLimitException {
+		return Pair.of(bundleEntrypoint(options, entry, modules), IModuleBundler.earlyErrors(options, modules));
 	}
 
 	//(function(global){ ... }.call(this, this));
-	private ExpressionStatement anonymousFunctionCall(String rootPath, LinkedHashMap<String, Module> rewrittenModules) {
+	// When release is set, each module is removed from rewrittenModules once it has been transformed.
+	private ExpressionStatement anonymousFunctionCall(String rootPath, LinkedHashMap<String, Module> rewrittenModules, Maybe<String> registry, boolean release) {
 		StaticMemberExpression anonymousCall =
-				new StaticMemberExpression(anonymousFunctionExpression(rootPath, rewrittenModules), "call");
+				new StaticMemberExpression(anonymousFunctionExpression(rootPath, rewrittenModules, registry, release), "call");
 		ImmutableList<SpreadElementExpression> params = ImmutableList.of(new ThisExpression(), new ThisExpression());
 		CallExpression callExpression = new CallExpression(anonymousCall, params);
 
@@ -98,21 +142,26 @@ public class StandardModuleBundler implements IModuleBundler {
 	}
 
 	// function(global) {...}
-	private FunctionExpression anonymousFunctionExpression(String rootPath, LinkedHashMap<String, Module> rewrittenModules) {
+	private FunctionExpression anonymousFunctionExpression(String rootPath, LinkedHashMap<String, Module> rewrittenModules, Maybe<String> registry, boolean release) {
 		BindingIdentifier globalIden = new BindingIdentifier("global");
 		FormalParameters params = new FormalParameters(ImmutableList.of(globalIden), Maybe.empty());
 
-		LinkedList<Statement> requireStatements =
-				rewrittenModules.entrySet().stream().map(x -> {
-					Node module = ImportExportTransformer.transformModule(x.getValue());
-					return requireDefineStatement(x.getKey(), (Module) module);
-				}).collect(Collectors.toCollection(LinkedList::new));
+		LinkedList<Statement> requireStatements = new LinkedList<>();
+		Iterator<Map.Entry<String, Module>> entries = rewrittenModules.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<String, Module> x = entries.next();
+			Node module = ImportExportTransformer.transformModule(x.getValue());
+			requireStatements.add(requireDefineStatement(x.getKey(), (Module) module));
+			if (release) {
+				entries.remove();
+			}
+		}
 		ImmutableList<Statement> statements = ImmutableList.from(requireStatements);
 		statements = statements.append(ImmutableList.of(requireCall(rootPath)));
 		statements = statements.cons(requireDefineDefinition());
 		statements = statements.cons(requireResolveDefinition());
 		statements = statements.cons(initializeRequireCache());
-		statements = statements.cons(initializeRequireModules());
+		statements = statements.cons(initializeRequireModules(registry));
 		statements = statements.cons(requireFunctionDeclaration());
 
 		FunctionBody body = new FunctionBody(ImmutableList.of(new Directive("use strict")), statements);
@@ -319,11 +368,17 @@ public class StandardModuleBundler implements IModuleBundler {
 	}
 
 	// require.modules={};
-	private ExpressionStatement initializeRequireModules() {
+	// or, with a registry, require.modules=global.registry||(global.registry={});
+	private ExpressionStatement initializeRequireModules(Maybe<String> registry) {
 		IdentifierExpression requireIden = new IdentifierExpression("require");
 		StaticMemberAssignmentTarget requireModules = new StaticMemberAssignmentTarget(requireIden, "modules");
+		Expression modules = registry.<Expression>map(name -> new BinaryExpression(
+				new StaticMemberExpression(new IdentifierExpression("global"), name),
+				BinaryOperator.LogicalOr,
+				new AssignmentExpression(new StaticMemberAssignmentTarget(new IdentifierExpression("global"), name), new ObjectExpression(ImmutableList.empty()))
+		)).orJust(new ObjectExpression(ImmutableList.empty()));
 		AssignmentExpression assignment =
-				new AssignmentExpression(requireModules, new ObjectExpression(ImmutableList.empty()));
+				new AssignmentExpression(requireModules, modules);
 
 		return new ExpressionStatement(assignment);
 	}
@@ -0,0 +1,29 @@
+package com.shapesecurity.bandolier.es2018.loader;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Thrown when bundling stops early because of the options' {@link com.shapesecurity.bandolier.es2018.bundlers.BundleLimits}.
+ * Unlike other failures it is never wrapped in another {@link ModuleLoaderException}, so callers can catch it directly.
+ */
+public class BundleLimitException extends ModuleLoaderException {
+
+	public enum Reason {
+		CANCELLED,
+		DEADLINE_EXCEEDED,
+		TOO_MANY_MODULES,
+		TOO_MUCH_SOURCE
+	}
+
+	@Nonnull
+	public final Reason reason;
+	// the module being loaded or bundled when bundling stopped, or the entry point between phases
+	@Nonnull
+	public final String module;
+
+	public BundleLimitException(@Nonnull Reason reason, @Nonnull String module, @Nonnull String detail) {
+		super("Bundling stopped at module " + module + ": " + detail);
+		this.reason = reason;
+		this.module = module;
+	}
+}
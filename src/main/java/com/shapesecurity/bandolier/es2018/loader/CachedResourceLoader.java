@@ -15,34 +15,61 @@
  */
 package com.shapesecurity.bandolier.es2018.loader;
 
+import com.shapesecurity.functional.data.Maybe;
+
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.HashMap;
 
+/**
+ * Loads resources through a {@link ResourceCache}. Subclasses only implement the uncached backend operations.
+ */
 public abstract class CachedResourceLoader implements IResourceLoader {
 
-	private HashMap<Path, String> cachedFiles = new HashMap<>();
+	@Nonnull
+	private final ResourceCache cache;
+
+	protected CachedResourceLoader() {
+		this(new ResourceCache());
+	}
+
+	/**
+	 * @param cache the cache to use, may be shared between loaders that agree on what a path refers to
+	 */
+	protected CachedResourceLoader(@Nonnull ResourceCache cache) {
+		this.cache = cache;
+	}
 
 	public abstract Boolean existsBackend(@Nonnull Path path);
 
 	public abstract String loadResourceBackend(@Nonnull Path path) throws IOException;
 
+	@Nonnull
+	public final ResourceCache getCache() {
+		return this.cache;
+	}
+
 	@Nonnull
 	@Override
 	public final Boolean exists(@Nonnull Path path) {
-		return cachedFiles.containsKey(path) || this.existsBackend(path);
+		return this.cache.containsKey(path) || this.existsBackend(path);
 	}
 
 	@Nonnull
 	@Override
 	public final String loadResource(@Nonnull Path path) throws IOException {
-		if (cachedFiles.containsKey(path)) {
-			return cachedFiles.get(path);
+		Maybe<String> cached = this.cache.get(path);
+		if (cached.isJust()) {
+			return cached.fromJust();
 		}
+		// loaded outside of any lock; concurrent misses for the same path may both hit the backend
 		String resource = this.loadResourceBackend(path);
-		cachedFiles.put(path, resource);
+		this.cache.put(path, resource);
 		return resource;
 	}
-}
 
+	@Override
+	public void invalidate(@Nonnull Path path) {
+		this.cache.invalidate(path);
+	}
+}
@@ -32,6 +32,11 @@ public class ClassResourceLoader extends CachedResourceLoader {
 		this.klass = klass;
 	}
 
+	public ClassResourceLoader(Class klass, @Nonnull ResourceCache cache) {
+		super(cache);
+		this.klass = klass;
+	}
+
 	@Nonnull
 	@Override
 	public Boolean existsBackend(@Nonnull Path path) {
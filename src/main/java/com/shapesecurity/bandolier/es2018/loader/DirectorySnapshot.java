@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018.loader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * An in-memory view of the file system for answering existence checks. Each directory is listed at most once; a path
+ * whose name is missing from its parent's listing is known not to exist without touching the file system, and the kind
+ * of an entry that is present is checked once and remembered.
+ *
+ * Names that only match an entry of the listing when case is ignored are looked up on the file system once, so that
+ * they are found on case-insensitive file systems just as a stat would find them, and not found on others.
+ *
+ * The snapshot assumes the file system does not change while it is in use, unless told otherwise through
+ * {@link #invalidate(Path)}. It is thread-safe and may be shared between loaders.
+ */
+public final class DirectorySnapshot {
+
+	private static final class Listing {
+		static final Listing EMPTY = new Listing(Collections.emptySet());
+
+		@Nonnull
+		final Set<String> names;
+		@Nonnull
+		final Set<String> foldedNames;
+
+		Listing(@Nonnull Set<String> names) {
+			this.names = names;
+			this.foldedNames = names.stream().map(DirectorySnapshot::fold).collect(Collectors.toSet());
+		}
+	}
+
+	@Nonnull
+	private final ConcurrentHashMap<Path, Listing> listings = new ConcurrentHashMap<>();
+	@Nonnull
+	private final ConcurrentHashMap<Path, Boolean> regularFiles = new ConcurrentHashMap<>();
+	// whether paths whose names differ from an entry of their directory only in case exist
+	@Nonnull
+	private final ConcurrentHashMap<Path, Boolean> caseMismatches = new ConcurrentHashMap<>();
+
+	private final AtomicLong directoryReads = new AtomicLong();
+	private final AtomicLong fileChecks = new AtomicLong();
+
+	public boolean isRegularFile(@Nonnull Path path) {
+		path = path.toAbsolutePath().normalize();
+		Path parent = path.getParent();
+		Path name = path.getFileName();
+		if (parent == null || name == null || !this.contains(parent, name.toString())) {
+			return false;
+		}
+		Boolean regularFile = this.regularFiles.get(path);
+		if (regularFile == null) {
+			this.fileChecks.incrementAndGet();
+			regularFile = Files.isRegularFile(path);
+			this.regularFiles.putIfAbsent(path, regularFile);
+		}
+		return regularFile;
+	}
+
+	// whether the directory has an entry of the given name, as the file system would answer
+	private boolean contains(@Nonnull Path directory, @Nonnull String name) {
+		Listing listing = this.listingOf(directory);
+		if (listing.names.contains(name)) {
+			return true;
+		}
+		if (!listing.foldedNames.contains(fold(name))) {
+			return false;
+		}
+		Path path = directory.resolve(name);
+		Boolean exists = this.caseMismatches.get(path);
+		if (exists == null) {
+			this.fileChecks.incrementAndGet();
+			exists = Files.exists(path);
+			this.caseMismatches.putIfAbsent(path, exists);
+		}
+		return exists;
+	}
+
+	@Nonnull
+	private static String fold(@Nonnull String name) {
+		return name.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+	}
+
+	@Nonnull
+	private Listing listingOf(@Nonnull Path directory) {
+		Listing listing = this.listings.get(directory);
+		if (listing == null) {
+			// a directory missing from its parent's listing is not read at all, which makes walks through
+			// nonexistent node_modules directories free
+			Path parent = directory.getParent();
+			Path name = directory.getFileName();
+			if (parent != null && name != null && !this.contains(parent, name.toString())) {
+				listing = Listing.EMPTY;
+			} else {
+				listing = read(directory);
+				this.directoryReads.incrementAndGet();
+			}
+			Listing existing = this.listings.putIfAbsent(directory, listing);
+			if (existing != null) {
+				listing = existing;
+			}
+		}
+		return listing;
+	}
+
+	// anything that cannot be listed, including paths that are not directories, has no entries
+	@Nonnull
+	private static Listing read(@Nonnull Path directory) {
+		Set<String> names = new HashSet<>();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+			for (Path entry : entries) {
+				names.add(entry.getFileName().toString());
+			}
+		} catch (IOException e) {
+			return Listing.EMPTY;
+		}
+		return new Listing(names);
+	}
+
+	/**
+	 * Forgets what is known about the given path and the listings of all of its ancestors, any of which may have been
+	 * created or removed along with it.
+	 */
+	public void invalidate(@Nonnull Path path) {
+		path = path.toAbsolutePath().normalize();
+		this.regularFiles.remove(path);
+		for (Path directory = path; directory != null; directory = directory.getParent()) {
+			this.listings.remove(directory);
+			this.caseMismatches.remove(directory);
+		}
+	}
+
+	public void clear() {
+		this.listings.clear();
+		this.regularFiles.clear();
+		this.caseMismatches.clear();
+	}
+
+	public long getDirectoryReadCount() {
+		return this.directoryReads.get();
+	}
+
+	public long getFileCheckCount() {
+		return this.fileChecks.get();
+	}
+}
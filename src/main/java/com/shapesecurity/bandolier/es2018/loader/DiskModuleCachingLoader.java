@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018.loader;
+
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.parser.JsError;
+import com.shapesecurity.shift.es2018.parser.Parser;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps another loader, persisting parsed modules in a cache directory so that later runs can skip parsing files whose
+ * content has not changed. Entries are keyed by a hash of the source and stored under a directory named for the
+ * encoding and parser versions, so upgrading either simply starts a fresh cache.
+ *
+ * The cache is best-effort: unreadable entries are reparsed and failures to write are ignored. Entries are written
+ * atomically, so several processes may share a cache directory.
+ */
+public class DiskModuleCachingLoader implements IResourceLoader {
+
+	@Nonnull
+	private static final String PARSER_VERSION = parserVersion();
+
+	@Nonnull
+	private final IResourceLoader loader;
+	@Nonnull
+	private final Path directory;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public DiskModuleCachingLoader(@Nonnull IResourceLoader loader, @Nonnull Path cacheDirectory) {
+		this.loader = loader;
+		this.directory = cacheDirectory.resolve("modules-v" + ModuleCodec.FORMAT_VERSION + "-shift-" + PARSER_VERSION);
+	}
+
+	@Nonnull
+	private static String parserVersion() {
+		try (InputStream in = Parser.class.getResourceAsStream("/META-INF/maven/com.shapesecurity.shift/es2018/pom.properties")) {
+			if (in != null) {
+				Properties properties = new Properties();
+				properties.load(in);
+				String version = properties.getProperty("version");
+				if (version != null) {
+					return version;
+				}
+			}
+		} catch (IOException ignored) {
+		}
+		return "unknown";
+	}
+
+	@Nonnull
+	public Path getDirectory() {
+		return this.directory;
+	}
+
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	@Nonnull
+	@Override
+	public Boolean exists(@Nonnull Path path) {
+		return this.loader.exists(path);
+	}
+
+	@Nonnull
+	@Override
+	public String loadResource(@Nonnull Path path) throws IOException {
+		return this.loader.loadResource(path);
+	}
+
+	@Override
+	public void invalidate(@Nonnull Path path) {
+		this.loader.invalidate(path);
+	}
+
+	@Nonnull
+	@Override
+	public Module loadModule(@Nonnull Path path) throws IOException, JsError {
+		String source = this.loader.loadResource(path);
+		String hash = ContentHash.of(source);
+		// a two character prefix keeps directories small for large caches
+		Path entry = this.directory.resolve(hash.substring(0, 2)).resolve(hash + ".bin");
+		try {
+			Module module = ModuleCodec.decode(Files.readAllBytes(entry));
+			this.hits.incrementAndGet();
+			return module;
+		} catch (NoSuchFileException ignored) {
+		} catch (IOException ignored) {
+			// corrupt or truncated entry, overwritten below
+		}
+		this.misses.incrementAndGet();
+		Module module = Parser.parseModule(source);
+		try {
+			write(entry, ModuleCodec.encode(module));
+		} catch (IOException ignored) {
+		}
+		return module;
+	}
+
+	private static void write(@Nonnull Path entry, @Nonnull byte[] data) throws IOException {
+		Files.createDirectories(entry.getParent());
+		Path temporary = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temporary, data);
+			try {
+				Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+}
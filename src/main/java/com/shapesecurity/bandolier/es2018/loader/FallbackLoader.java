@@ -43,6 +43,13 @@ public class FallbackLoader implements IResourceLoader {
         throw new IOException("Failed to load resource at path " + path);
     }
 
+    @Override
+    public void invalidate(@Nonnull Path path) {
+        for (IResourceLoader loader : this.loaders) {
+            loader.invalidate(path);
+        }
+    }
+
     @Override
     @Nonnull
     public Module loadModule(@Nonnull Path path) throws IOException, JsError {
@@ -15,6 +15,8 @@
  */
 package com.shapesecurity.bandolier.es2018.loader;
 
+import com.shapesecurity.functional.data.Maybe;
+
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -23,12 +25,46 @@ import java.nio.file.Path;
 
 public class FileLoader extends CachedResourceLoader {
 
+	@Nonnull
+	private final Maybe<DirectorySnapshot> snapshot;
+
+	public FileLoader() {
+		super();
+		this.snapshot = Maybe.empty();
+	}
+
+	public FileLoader(@Nonnull ResourceCache cache) {
+		super(cache);
+		this.snapshot = Maybe.empty();
+	}
+
+	/**
+	 * Creates a loader that answers existence checks from a snapshot of the file system rather than a stat per check.
+	 * @param cache the resource cache
+	 * @param snapshot may be shared between loaders
+	 */
+	public FileLoader(@Nonnull ResourceCache cache, @Nonnull DirectorySnapshot snapshot) {
+		super(cache);
+		this.snapshot = Maybe.of(snapshot);
+	}
+
 	@Nonnull
 	@Override
 	public Boolean existsBackend(@Nonnull Path path) {
+		if (this.snapshot.isJust()) {
+			return this.snapshot.fromJust().isRegularFile(path);
+		}
 		return Files.exists(path) && Files.isRegularFile(path);
 	}
 
+	@Override
+	public void invalidate(@Nonnull Path path) {
+		super.invalidate(path);
+		if (this.snapshot.isJust()) {
+			this.snapshot.fromJust().invalidate(path);
+		}
+	}
+
 	@Nonnull
 	@Override
 	public String loadResourceBackend(@Nonnull Path path) throws IOException {
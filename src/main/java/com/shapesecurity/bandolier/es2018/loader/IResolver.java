@@ -24,4 +24,11 @@ public interface IResolver {
 	 */
 	@Nonnull
 	String resolve(@Nonnull Path root, @Nonnull String path);
+
+	/**
+	 * Forgets any resolutions that may have depended on the given path, after it was changed, added or removed. Called
+	 * after the loader has been invalidated.
+	 */
+	default void invalidate(@Nonnull Path path) {
+	}
 }
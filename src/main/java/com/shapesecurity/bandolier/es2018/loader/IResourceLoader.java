@@ -37,4 +37,11 @@ public interface IResourceLoader {
 	default Module loadModule(@Nonnull Path path) throws IOException, JsError {
 		return Parser.parseModule(this.loadResource(path));
 	}
+
+	/**
+	 * Forgets anything remembered about the given path, after it was changed, added or removed. Loaders that cache
+	 * must override this, and loaders that wrap others must forward it.
+	 */
+	default void invalidate(@Nonnull Path path) {
+	}
 }
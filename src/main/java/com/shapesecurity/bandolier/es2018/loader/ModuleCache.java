@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018.loader;
+
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.parser.JsError;
+import com.shapesecurity.shift.es2018.parser.Parser;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache of parsed modules, keyed by a hash of their source. Shift ASTs are immutable, so the same
+ * {@link Module} is handed out for every source with the same content, regardless of where it was loaded from.
+ *
+ * The cache may be bounded by the approximate size of the sources it holds modules for, two bytes per character, in
+ * which case the least recently used modules are evicted first. Lookups never block; only adding a module does.
+ */
+public final class ModuleCache {
+
+	private static final class Entry {
+		@Nonnull
+		final Module module;
+		final long size;
+		volatile long lastAccess;
+
+		Entry(@Nonnull Module module, long size, long lastAccess) {
+			this.module = module;
+			this.size = size;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	private final long maxBytes;
+	@Nonnull
+	private final ConcurrentHashMap<String, Entry> modules = new ConcurrentHashMap<>();
+	@Nonnull
+	private final AtomicLong tick = new AtomicLong();
+	// guarded by this
+	private long sizeInBytes = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates an unbounded cache.
+	 */
+	public ModuleCache() {
+		this(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a cache holding the modules of at most (approximately) the given number of bytes of source.
+	 * @param maxBytes the size budget
+	 */
+	public ModuleCache(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes must not be negative");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Parses the given source as a module, or returns the module previously parsed from identical source.
+	 * @param source module source
+	 * @return the parsed module
+	 * @throws JsError when the source fails to parse; failures are not cached
+	 */
+	@Nonnull
+	public Module parse(@Nonnull String source) throws JsError {
+		String hash = ContentHash.of(source);
+		Entry entry = this.modules.get(hash);
+		if (entry != null) {
+			this.hits.incrementAndGet();
+			if (this.maxBytes != Long.MAX_VALUE) {
+				entry.lastAccess = this.tick.incrementAndGet();
+			}
+			return entry.module;
+		}
+		this.misses.incrementAndGet();
+		// parsed outside of any lock so that a slow parse does not block unrelated keys; a racing parse of the same
+		// source loses, and every caller still sees the same instance
+		Module module = Parser.parseModule(source);
+		long size = 2L * source.length();
+		if (size > this.maxBytes) {
+			return module;
+		}
+		return this.add(hash, new Entry(module, size, this.tick.incrementAndGet())).module;
+	}
+
+	// the entry cached for the hash, evicting others if this one is added and the budget is exceeded
+	@Nonnull
+	private synchronized Entry add(@Nonnull String hash, @Nonnull Entry entry) {
+		Entry existing = this.modules.putIfAbsent(hash, entry);
+		if (existing != null) {
+			return existing;
+		}
+		this.sizeInBytes += entry.size;
+		while (this.sizeInBytes > this.maxBytes) {
+			// misses are rare next to hits and each one costs a parse, so a scan for the victim is cheap enough
+			Map.Entry<String, Entry> victim = null;
+			for (Map.Entry<String, Entry> candidate : this.modules.entrySet()) {
+				if (candidate.getValue() != entry && (victim == null || candidate.getValue().lastAccess < victim.getValue().lastAccess)) {
+					victim = candidate;
+				}
+			}
+			this.modules.remove(victim.getKey());
+			this.sizeInBytes -= victim.getValue().size;
+			this.evictions.incrementAndGet();
+		}
+		return entry;
+	}
+
+	public synchronized void clear() {
+		this.modules.clear();
+		this.sizeInBytes = 0;
+	}
+
+	public int size() {
+		return this.modules.size();
+	}
+
+	public synchronized long getSizeInBytes() {
+		return this.sizeInBytes;
+	}
+
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	public long getEvictionCount() {
+		return this.evictions.get();
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018.loader;
+
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.parser.JsError;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Wraps another loader, parsing modules through a {@link ModuleCache}. Sharing the cache between builds (or between
+ * loaders) avoids reparsing files with identical content.
+ */
+public class ModuleCachingLoader implements IResourceLoader {
+
+	@Nonnull
+	private final IResourceLoader loader;
+	@Nonnull
+	private final ModuleCache cache;
+
+	public ModuleCachingLoader(@Nonnull IResourceLoader loader) {
+		this(loader, new ModuleCache());
+	}
+
+	public ModuleCachingLoader(@Nonnull IResourceLoader loader, @Nonnull ModuleCache cache) {
+		this.loader = loader;
+		this.cache = cache;
+	}
+
+	@Nonnull
+	public ModuleCache getCache() {
+		return this.cache;
+	}
+
+	@Nonnull
+	@Override
+	public Boolean exists(@Nonnull Path path) {
+		return this.loader.exists(path);
+	}
+
+	@Nonnull
+	@Override
+	public String loadResource(@Nonnull Path path) throws IOException {
+		return this.loader.loadResource(path);
+	}
+
+	@Override
+	public void invalidate(@Nonnull Path path) {
+		this.loader.invalidate(path);
+	}
+
+	@Nonnull
+	@Override
+	public Module loadModule(@Nonnull Path path) throws IOException, JsError {
+		return this.cache.parse(this.loader.loadResource(path));
+	}
+}
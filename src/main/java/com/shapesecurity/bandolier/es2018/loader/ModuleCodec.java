@@ -0,0 +1,418 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018.loader;
+
+import com.shapesecurity.functional.data.ImmutableList;
+import com.shapesecurity.functional.data.Maybe;
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.ast.Node;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact binary encoding of Shift ASTs. Every node is written as its class followed by the values of its public
+ * fields, in the order its constructor takes them; class names and strings are written once and referred to by index
+ * afterwards.
+ */
+public final class ModuleCodec {
+
+	// bumped whenever the encoding changes
+	public static final int FORMAT_VERSION = 1;
+
+	private static final int MAGIC = 0x42414e44;
+	private static final String AST_PACKAGE = Module.class.getPackage().getName();
+
+	private static final int TAG_NODE = 0;
+	private static final int TAG_ENUM = 1;
+	private static final int TAG_LIST = 2;
+	private static final int TAG_NOTHING = 3;
+	private static final int TAG_JUST = 4;
+	private static final int TAG_STRING = 5;
+	private static final int TAG_TRUE = 6;
+	private static final int TAG_FALSE = 7;
+	private static final int TAG_DOUBLE = 8;
+
+	private static final ConcurrentHashMap<Class<?>, Shape> SHAPES = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<String, Shape> SHAPES_BY_NAME = new ConcurrentHashMap<>();
+
+	private ModuleCodec() {
+	}
+
+	// How instances of an encodable class are taken apart and put back together. Node classes have their fields,
+	// ordered to match their constructor's parameters; enums have their constants.
+	private static final class Shape {
+		@Nonnull
+		final Class<?> type;
+		@Nullable
+		final Constructor<?> constructor;
+		@Nonnull
+		final Field[] fields;
+		@Nullable
+		final Object[] constants;
+
+		Shape(@Nonnull Class<?> type, @Nullable Constructor<?> constructor, @Nonnull Field[] fields, @Nullable Object[] constants) {
+			this.type = type;
+			this.constructor = constructor;
+			this.fields = fields;
+			this.constants = constants;
+		}
+	}
+
+	@Nonnull
+	private static Shape shapeOf(@Nonnull Class<?> type) {
+		return SHAPES.computeIfAbsent(type, ModuleCodec::computeShape);
+	}
+
+	@Nonnull
+	private static Shape shapeNamed(@Nonnull String name) throws IOException {
+		Shape shape = SHAPES_BY_NAME.get(name);
+		if (shape != null) {
+			return shape;
+		}
+		// only AST classes are ever instantiated, whatever the cache file says
+		if (!name.startsWith(AST_PACKAGE + ".")) {
+			throw new IOException("Unexpected class " + name);
+		}
+		Class<?> type;
+		try {
+			type = Class.forName(name, false, Module.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+		if (!Node.class.isAssignableFrom(type) && !type.isEnum()) {
+			throw new IOException("Unexpected class " + name);
+		}
+		shape = shapeOf(type);
+		SHAPES_BY_NAME.put(name, shape);
+		return shape;
+	}
+
+	// Inherited fields are not reported in constructor order, so parameters are matched to fields by their exact
+	// generic type. Fields sharing a type (such as isAsync and isGenerator) are declared in constructor order.
+	@Nonnull
+	private static Shape computeShape(@Nonnull Class<?> type) {
+		if (type.isEnum()) {
+			return new Shape(type, null, new Field[0], type.getEnumConstants());
+		}
+		Constructor<?>[] constructors = type.getConstructors();
+		if (constructors.length != 1) {
+			throw new IllegalStateException("Expected a single constructor for " + type.getName());
+		}
+		Constructor<?> constructor = constructors[0];
+		List<Field> unmatched = new ArrayList<>();
+		for (Field field : type.getFields()) {
+			if (!Modifier.isStatic(field.getModifiers())) {
+				unmatched.add(field);
+			}
+		}
+		Type[] parameterTypes = constructor.getGenericParameterTypes();
+		if (parameterTypes.length != unmatched.size()) {
+			throw new IllegalStateException("Constructor of " + type.getName() + " does not cover its fields");
+		}
+		Field[] fields = new Field[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; ++i) {
+			for (int j = 0; j < unmatched.size(); ++j) {
+				if (unmatched.get(j).getGenericType().equals(parameterTypes[i])) {
+					fields[i] = unmatched.remove(j);
+					break;
+				}
+			}
+			if (fields[i] == null) {
+				throw new IllegalStateException("No field of " + type.getName() + " matches parameter " + i);
+			}
+			// skips the access check on every use
+			fields[i].setAccessible(true);
+		}
+		constructor.setAccessible(true);
+		return new Shape(type, constructor, fields, null);
+	}
+
+	@Nonnull
+	public static byte[] encode(@Nonnull Module module) {
+		Encoder encoder = new Encoder();
+		encoder.writeInt(MAGIC);
+		encoder.writeVarInt(FORMAT_VERSION);
+		encoder.writeValue(module);
+		return encoder.out.toByteArray();
+	}
+
+	/**
+	 * @throws IOException if the data is truncated, corrupt, or was written by a different format version
+	 */
+	@Nonnull
+	public static Module decode(@Nonnull byte[] data) throws IOException {
+		Decoder decoder = new Decoder(data);
+		try {
+			if (decoder.readInt() != MAGIC || decoder.readVarInt() != FORMAT_VERSION) {
+				throw new IOException("Unrecognised module encoding");
+			}
+			Object value = decoder.readValue();
+			if (!(value instanceof Module) || decoder.position != data.length) {
+				throw new IOException("Malformed module encoding");
+			}
+			return (Module) value;
+		} catch (IndexOutOfBoundsException | ClassCastException | IllegalArgumentException e) {
+			throw new IOException("Malformed module encoding", e);
+		}
+	}
+
+	private static final class Encoder {
+		@Nonnull
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		@Nonnull
+		final Map<Class<?>, Integer> classes = new HashMap<>();
+		@Nonnull
+		final List<Shape> shapes = new ArrayList<>();
+		@Nonnull
+		final Map<String, Integer> strings = new HashMap<>();
+
+		void writeByte(int b) {
+			this.out.write(b);
+		}
+
+		void writeInt(int value) {
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				this.out.write(value >>> shift);
+			}
+		}
+
+		void writeVarInt(int value) {
+			while ((value & ~0x7f) != 0) {
+				this.out.write((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			this.out.write(value);
+		}
+
+		void writeString(@Nonnull String value) {
+			Integer index = this.strings.get(value);
+			if (index != null) {
+				this.writeVarInt(index);
+				return;
+			}
+			// a fresh string is announced with the next unused index
+			this.writeVarInt(this.strings.size());
+			this.strings.put(value, this.strings.size());
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			this.writeVarInt(bytes.length);
+			this.out.write(bytes, 0, bytes.length);
+		}
+
+		@Nonnull
+		Shape writeClass(@Nonnull Class<?> type) {
+			Integer index = this.classes.get(type);
+			if (index != null) {
+				this.writeVarInt(index);
+				return this.shapes.get(index);
+			}
+			Shape shape = shapeOf(type);
+			this.writeVarInt(this.classes.size());
+			this.classes.put(type, this.classes.size());
+			this.shapes.add(shape);
+			this.writeString(type.getName());
+			return shape;
+		}
+
+		void writeValue(@Nonnull Object value) {
+			if (value instanceof Node) {
+				this.writeByte(TAG_NODE);
+				Shape shape = this.writeClass(value.getClass());
+				try {
+					for (Field field : shape.fields) {
+						this.writeValue(field.get(value));
+					}
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException(e);
+				}
+			} else if (value instanceof Enum) {
+				this.writeByte(TAG_ENUM);
+				this.writeClass(((Enum<?>) value).getDeclaringClass());
+				this.writeVarInt(((Enum<?>) value).ordinal());
+			} else if (value instanceof ImmutableList) {
+				ImmutableList<?> list = (ImmutableList<?>) value;
+				this.writeByte(TAG_LIST);
+				this.writeVarInt(list.length);
+				for (Object element : list) {
+					this.writeValue(element);
+				}
+			} else if (value instanceof Maybe) {
+				Maybe<?> maybe = (Maybe<?>) value;
+				if (maybe.isJust()) {
+					this.writeByte(TAG_JUST);
+					this.writeValue(maybe.fromJust());
+				} else {
+					this.writeByte(TAG_NOTHING);
+				}
+			} else if (value instanceof String) {
+				this.writeByte(TAG_STRING);
+				this.writeString((String) value);
+			} else if (value instanceof Boolean) {
+				this.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+			} else if (value instanceof Double) {
+				this.writeByte(TAG_DOUBLE);
+				long bits = Double.doubleToRawLongBits((Double) value);
+				this.writeInt((int) (bits >>> 32));
+				this.writeInt((int) bits);
+			} else {
+				throw new IllegalArgumentException("Cannot encode " + value.getClass().getName());
+			}
+		}
+	}
+
+	private static final class Decoder {
+		@Nonnull
+		final byte[] data;
+		int position = 0;
+		@Nonnull
+		final List<Shape> shapes = new ArrayList<>();
+		@Nonnull
+		final List<String> strings = new ArrayList<>();
+
+		Decoder(@Nonnull byte[] data) {
+			this.data = data;
+		}
+
+		int readByte() {
+			return this.data[this.position++] & 0xff;
+		}
+
+		int readInt() {
+			int value = 0;
+			for (int i = 0; i < 4; ++i) {
+				value = (value << 8) | this.readByte();
+			}
+			return value;
+		}
+
+		// every encoded element takes at least one byte, so a count larger than what remains is corrupt
+		int readLength() throws IOException {
+			int length = this.readVarInt();
+			if (length < 0 || length > this.data.length - this.position) {
+				throw new IOException("Malformed length");
+			}
+			return length;
+		}
+
+		int readVarInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				int b = this.readByte();
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		@Nonnull
+		String readString() throws IOException {
+			int index = this.readVarInt();
+			if (index < this.strings.size()) {
+				return this.strings.get(index);
+			}
+			if (index != this.strings.size()) {
+				throw new IOException("Malformed string reference");
+			}
+			int length = this.readLength();
+			String value = new String(this.data, this.position, length, StandardCharsets.UTF_8);
+			this.position += length;
+			this.strings.add(value);
+			return value;
+		}
+
+		@Nonnull
+		Shape readClass() throws IOException {
+			int index = this.readVarInt();
+			if (index < this.shapes.size()) {
+				return this.shapes.get(index);
+			}
+			if (index != this.shapes.size()) {
+				throw new IOException("Malformed class reference");
+			}
+			Shape shape = shapeNamed(this.readString());
+			this.shapes.add(shape);
+			return shape;
+		}
+
+		@Nonnull
+		Object readValue() throws IOException {
+			int tag = this.readByte();
+			switch (tag) {
+				case TAG_NODE: {
+					Shape shape = this.readClass();
+					if (shape.constructor == null) {
+						throw new IOException("Expected a node class, got " + shape.type.getName());
+					}
+					Object[] arguments = new Object[shape.fields.length];
+					for (int i = 0; i < arguments.length; ++i) {
+						arguments[i] = this.readValue();
+					}
+					try {
+						return shape.constructor.newInstance(arguments);
+					} catch (ReflectiveOperationException e) {
+						throw new IOException(e);
+					}
+				}
+				case TAG_ENUM: {
+					Shape shape = this.readClass();
+					if (shape.constants == null) {
+						throw new IOException("Expected an enum class, got " + shape.type.getName());
+					}
+					return shape.constants[this.readVarInt()];
+				}
+				case TAG_LIST: {
+					int length = this.readLength();
+					Object[] elements = new Object[length];
+					for (int i = 0; i < length; ++i) {
+						elements[i] = this.readValue();
+					}
+					return ImmutableList.from(elements);
+				}
+				case TAG_NOTHING:
+					return Maybe.empty();
+				case TAG_JUST:
+					return Maybe.of(this.readValue());
+				case TAG_STRING:
+					return this.readString();
+				case TAG_TRUE:
+					return true;
+				case TAG_FALSE:
+					return false;
+				case TAG_DOUBLE: {
+					long high = this.readInt() & 0xffffffffL;
+					long low = this.readInt() & 0xffffffffL;
+					return Double.longBitsToDouble((high << 32) | low);
+				}
+				default:
+					throw new IOException("Unknown tag " + tag);
+			}
+		}
+	}
+}
@@ -22,4 +22,8 @@ public class ModuleLoaderException extends Exception {
 	public ModuleLoaderException(@Nonnull String module, @Nonnull Exception cause) {
 		super("Module Loader Exception: module " + module + " cannot be loaded: " + cause.getMessage(), cause);
 	}
+
+	protected ModuleLoaderException(@Nonnull String message) {
+		super(message);
+	}
 }
\ No newline at end of file
@@ -15,7 +15,6 @@
  */
 package com.shapesecurity.bandolier.es2018.loader;
 
-import com.google.gson.Gson;
 import com.shapesecurity.functional.data.Maybe;
 
 import javax.annotation.Nonnull;
@@ -56,6 +55,9 @@ public class NodeResolver implements IResolver {
 
 	@Nonnull
 	private final IResourceLoader loader;
+	// remembers results only when given one, since the file system may change between calls
+	@Nonnull
+	private final Maybe<NodeResolverCache> cache;
 
 	public NodeResolver() {
 		this(new FileLoader());
@@ -67,12 +69,39 @@ public class NodeResolver implements IResolver {
 	 */
 	public NodeResolver(@Nonnull IResourceLoader loader) {
 		this.loader = loader;
+		this.cache = Maybe.empty();
+	}
+
+	/**
+	 * Create a new resolver for node modules that remembers its results in the given cache.
+	 * @param loader Used to determine if a resource exists
+	 * @param cache May be shared with other resolvers using an equivalent loader
+	 */
+	public NodeResolver(@Nonnull IResourceLoader loader, @Nonnull NodeResolverCache cache) {
+		this.loader = loader;
+		this.cache = Maybe.of(cache);
 	}
 
+	@Nonnull
+	public Maybe<NodeResolverCache> getCache() {
+		return this.cache;
+	}
 
 	@Nonnull
 	@Override
 	public String resolve(@Nonnull Path root, @Nonnull String path) {
+		return this.cache.isJust() ? this.cache.fromJust().resolve(root, path, this) : this.resolveUncached(root, path);
+	}
+
+	@Override
+	public void invalidate(@Nonnull Path path) {
+		if (this.cache.isJust()) {
+			this.cache.fromJust().invalidate(path, this.loader);
+		}
+	}
+
+	@Nonnull
+	String resolveUncached(@Nonnull Path root, @Nonnull String path) {
 		if (path.startsWith(".") || path.startsWith("/")) {
 			Path toCheck = path.startsWith(".") ? root.resolve(path).normalize() : Paths.get(path);
 
@@ -112,11 +141,11 @@ public class NodeResolver implements IResolver {
 		String pathJs = path.toString() + ".js";
 		String pathJson = path.toString() + ".json";
 
-		if (this.loader.exists(path) && !this.hasDirFiles(path)) {
+		if (this.exists(path) && !this.hasDirFiles(path)) {
 			return Maybe.of(path.toString());
-		} else if (this.loader.exists(Paths.get(pathJs)) && !this.hasDirFiles(Paths.get(pathJs))) {
+		} else if (this.exists(Paths.get(pathJs)) && !this.hasDirFiles(Paths.get(pathJs))) {
 			return Maybe.of(pathJs);
-		} else if (this.loader.exists(Paths.get(pathJson)) && !this.hasDirFiles(Paths.get(pathJson))) {
+		} else if (this.exists(Paths.get(pathJson)) && !this.hasDirFiles(Paths.get(pathJson))) {
 			return Maybe.of(pathJson);
 		}
 		return Maybe.empty();
@@ -127,37 +156,35 @@ public class NodeResolver implements IResolver {
 	// example a JAR file), we need to check if a path might have resources inside of it.
 	@Nonnull
 	private Boolean hasDirFiles(@Nonnull Path path) {
-		return this.loader.exists(path.resolve("package.json")) ||
-				this.loader.exists(path.resolve("index.js")) ||
-				this.loader.exists(path.resolve("index.json"));
+		return this.exists(path.resolve("package.json")) ||
+				this.exists(path.resolve("index.js")) ||
+				this.exists(path.resolve("index.json"));
 	}
 
 
 	@Nonnull
 	private Maybe<String> resolveAsDir(@Nonnull Path path) {
-		if (this.loader.exists(path.resolve("package.json"))) {
-			Gson gson = new Gson();
+		if (this.exists(path.resolve("package.json"))) {
 			try {
-				String json = this.loader.loadResource(path.resolve("package.json"));
-				NodePackageJson packageJson = gson.fromJson(json, NodePackageJson.class);
-				if (packageJson.main != null) {
-					return resolveAsFile(path.resolve(packageJson.main));
+				PackageManifest manifest = this.cache.isJust() ? this.cache.fromJust().manifest(path.resolve("package.json"), this.loader) : PackageManifest.parse(this.loader.loadResource(path.resolve("package.json")));
+				if (manifest.main.isJust()) {
+					return resolveAsFile(path.resolve(manifest.main.fromJust()));
 				}
 			} catch (IOException e) {
 				return Maybe.empty();
 			}
 		}
-		if (this.loader.exists(path.resolve("index.js"))) {
+		if (this.exists(path.resolve("index.js"))) {
 			return Maybe.of(path.resolve("index.js").toString());
 		}
-		if (this.loader.exists(path.resolve("index.json"))) {
+		if (this.exists(path.resolve("index.json"))) {
 			return Maybe.of(path.resolve("index.json").toString());
 		}
 		return Maybe.empty();
 	}
 
-	class NodePackageJson {
-		public String main;
+	private boolean exists(@Nonnull Path path) {
+		return this.cache.isJust() ? this.cache.fromJust().exists(path, this.loader) : this.loader.exists(path);
 	}
 
 }
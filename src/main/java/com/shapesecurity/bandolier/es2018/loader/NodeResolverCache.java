@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018.loader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe memo of {@link NodeResolver} results: resolved specifiers, keyed by the directory they were imported
+ * from, the outcome of every existence probe, so that paths known to be missing are not probed again, and the
+ * <code>package.json</code> manifests read along the way.
+ *
+ * The cache assumes the file system does not change while it is in use. It may be shared between resolvers for the
+ * duration of a build, as long as they see the file system through equivalent loaders.
+ */
+public final class NodeResolverCache {
+
+	private static final class Key {
+		@Nonnull
+		final Path directory;
+		@Nonnull
+		final String specifier;
+
+		Key(@Nonnull Path directory, @Nonnull String specifier) {
+			this.directory = directory;
+			this.specifier = specifier;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return this.directory.equals(key.directory) && this.specifier.equals(key.specifier);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.directory, this.specifier);
+		}
+	}
+
+	@Nonnull
+	private final ConcurrentHashMap<Key, String> resolutions = new ConcurrentHashMap<>();
+	@Nonnull
+	private final ConcurrentHashMap<Path, Boolean> existence = new ConcurrentHashMap<>();
+	@Nonnull
+	private final ConcurrentHashMap<Path, PackageManifest> manifests = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	@Nonnull
+	String resolve(@Nonnull Path directory, @Nonnull String specifier, @Nonnull NodeResolver resolver) {
+		Key key = new Key(directory, specifier);
+		String resolved = this.resolutions.get(key);
+		if (resolved != null) {
+			this.hits.incrementAndGet();
+			return resolved;
+		}
+		this.misses.incrementAndGet();
+		resolved = resolver.resolveUncached(directory, specifier);
+		this.resolutions.putIfAbsent(key, resolved);
+		return resolved;
+	}
+
+	boolean exists(@Nonnull Path path, @Nonnull IResourceLoader loader) {
+		Boolean exists = this.existence.get(path);
+		if (exists == null) {
+			exists = loader.exists(path);
+			this.existence.putIfAbsent(path, exists);
+		}
+		return exists;
+	}
+
+	/**
+	 * @throws IOException when the manifest cannot be loaded; such failures are not cached
+	 */
+	@Nonnull
+	PackageManifest manifest(@Nonnull Path path, @Nonnull IResourceLoader loader) throws IOException {
+		PackageManifest manifest = this.manifests.get(path);
+		if (manifest == null) {
+			manifest = PackageManifest.parse(loader.loadResource(path));
+			this.manifests.putIfAbsent(path, manifest);
+		}
+		return manifest;
+	}
+
+	// Resolutions only depend on the existence of the paths they probed and on the manifests they read, so they are
+	// kept unless the path was one of those and has changed.
+	void invalidate(@Nonnull Path path, @Nonnull IResourceLoader loader) {
+		boolean affected = this.manifests.remove(path) != null;
+		Boolean existed = this.existence.remove(path);
+		if (existed != null && existed != loader.exists(path)) {
+			affected = true;
+		}
+		if (affected) {
+			this.resolutions.clear();
+		}
+	}
+
+	public void clear() {
+		this.resolutions.clear();
+		this.existence.clear();
+		this.manifests.clear();
+	}
+
+	/**
+	 * @return the number of specifiers resolved
+	 */
+	public int size() {
+		return this.resolutions.size();
+	}
+
+	/**
+	 * @return the number of <code>package.json</code> files read
+	 */
+	public int getManifestCount() {
+		return this.manifests.size();
+	}
+
+	/**
+	 * @return the number of probed paths that do not exist
+	 */
+	public long getNegativeCount() {
+		return this.existence.values().stream().filter(exists -> !exists).count();
+	}
+
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	public long getMissCount() {
+		return this.misses.get();
+	}
+}
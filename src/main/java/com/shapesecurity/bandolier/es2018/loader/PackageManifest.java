@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018.loader;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.shapesecurity.functional.data.Maybe;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * The parts of a <code>package.json</code> that module resolution needs.
+ */
+public final class PackageManifest {
+
+	@Nonnull
+	public static final PackageManifest EMPTY = new PackageManifest(Maybe.empty());
+
+	@Nonnull
+	public final Maybe<String> main;
+
+	private PackageManifest(@Nonnull Maybe<String> main) {
+		this.main = main;
+	}
+
+	/**
+	 * Extracts the <code>main</code> field, reading no further than the field itself. Manifests that are not JSON
+	 * objects, or cannot be read, have no <code>main</code>.
+	 */
+	@Nonnull
+	public static PackageManifest parse(@Nonnull String json) {
+		try (JsonReader reader = new JsonReader(new StringReader(json))) {
+			reader.setLenient(true);
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				return EMPTY;
+			}
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("main")) {
+					reader.skipValue();
+					continue;
+				}
+				JsonToken token = reader.peek();
+				if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+					return new PackageManifest(Maybe.of(reader.nextString()));
+				}
+				return EMPTY;
+			}
+		} catch (IOException | IllegalStateException e) {
+			return EMPTY;
+		}
+		return EMPTY;
+	}
+}
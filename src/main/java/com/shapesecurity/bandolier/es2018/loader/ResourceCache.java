@@ -0,0 +1,332 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018.loader;
+
+import com.shapesecurity.functional.data.Maybe;
+
+import javax.annotation.Nonnull;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe cache of loaded resources, bounded by an approximate size in bytes. When adding a resource would exceed
+ * the budget, entries are evicted in the order given by the {@link EvictionPolicy}. Resources larger than the whole
+ * budget are never retained.
+ *
+ * The size of a resource is approximated as two bytes per character.
+ *
+ * Lookups never block. When the cache is bounded, they queue their accesses, which are applied to the eviction order
+ * by whichever thread next holds the lock: adding or removing a resource, or a lookup finding the queue full and the
+ * lock free.
+ */
+public final class ResourceCache {
+
+	public enum EvictionPolicy {
+		// least recently used entries are evicted first
+		LRU {
+			@Nonnull
+			@Override
+			Order newOrder() {
+				return new RecencyOrder();
+			}
+		},
+		// least frequently used entries are evicted first, ties are broken by recency
+		LFU {
+			@Nonnull
+			@Override
+			Order newOrder() {
+				return new FrequencyOrder();
+			}
+		};
+
+		@Nonnull
+		abstract Order newOrder();
+	}
+
+	private static final class Entry {
+		@Nonnull
+		final Path path;
+		@Nonnull
+		final String resource;
+		// guarded by the lock
+		long accessCount = 0;
+		boolean removed = false;
+
+		Entry(@Nonnull Path path, @Nonnull String resource) {
+			this.path = path;
+			this.resource = resource;
+		}
+	}
+
+	// the entries in the order they are evicted, guarded by the lock
+	private interface Order {
+		void add(@Nonnull Entry entry);
+
+		void access(@Nonnull Entry entry);
+
+		void remove(@Nonnull Entry entry);
+
+		@Nonnull
+		Entry first();
+
+		void clear();
+	}
+
+	private static final class RecencyOrder implements Order {
+		@Nonnull
+		private final LinkedHashSet<Entry> entries = new LinkedHashSet<>();
+
+		@Override
+		public void add(@Nonnull Entry entry) {
+			this.entries.add(entry);
+		}
+
+		@Override
+		public void access(@Nonnull Entry entry) {
+			this.entries.remove(entry);
+			this.entries.add(entry);
+		}
+
+		@Override
+		public void remove(@Nonnull Entry entry) {
+			this.entries.remove(entry);
+		}
+
+		@Nonnull
+		@Override
+		public Entry first() {
+			return this.entries.iterator().next();
+		}
+
+		@Override
+		public void clear() {
+			this.entries.clear();
+		}
+	}
+
+	// entries bucketed by access count, each bucket in order of recency
+	private static final class FrequencyOrder implements Order {
+		@Nonnull
+		private final TreeMap<Long, LinkedHashSet<Entry>> buckets = new TreeMap<>();
+
+		@Override
+		public void add(@Nonnull Entry entry) {
+			this.buckets.computeIfAbsent(entry.accessCount, count -> new LinkedHashSet<>()).add(entry);
+		}
+
+		@Override
+		public void access(@Nonnull Entry entry) {
+			this.remove(entry);
+			++entry.accessCount;
+			this.add(entry);
+		}
+
+		@Override
+		public void remove(@Nonnull Entry entry) {
+			LinkedHashSet<Entry> bucket = this.buckets.get(entry.accessCount);
+			bucket.remove(entry);
+			if (bucket.isEmpty()) {
+				this.buckets.remove(entry.accessCount);
+			}
+		}
+
+		@Nonnull
+		@Override
+		public Entry first() {
+			return this.buckets.firstEntry().getValue().iterator().next();
+		}
+
+		@Override
+		public void clear() {
+			this.buckets.clear();
+		}
+	}
+
+	// the number of queued accesses from which lookups try to apply them
+	private static final int ACCESS_BUFFER_SIZE = 64;
+
+	private final long maxBytes;
+	@Nonnull
+	private final ConcurrentHashMap<Path, Entry> entries = new ConcurrentHashMap<>();
+	@Nonnull
+	private final ReentrantLock lock = new ReentrantLock();
+	// guarded by the lock
+	@Nonnull
+	private final Order order;
+	private long sizeInBytes = 0;
+	@Nonnull
+	private final ConcurrentLinkedQueue<Entry> accesses = new ConcurrentLinkedQueue<>();
+	@Nonnull
+	private final AtomicInteger pendingAccesses = new AtomicInteger();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates an unbounded cache.
+	 */
+	public ResourceCache() {
+		this(Long.MAX_VALUE, EvictionPolicy.LRU);
+	}
+
+	/**
+	 * Creates a cache holding at most (approximately) the given number of bytes.
+	 * @param maxBytes the size budget
+	 * @param policy which entries to evict first when the budget is exceeded
+	 */
+	public ResourceCache(long maxBytes, @Nonnull EvictionPolicy policy) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes must not be negative");
+		}
+		this.maxBytes = maxBytes;
+		this.order = policy.newOrder();
+	}
+
+	private static long sizeOf(@Nonnull String resource) {
+		return 2L * resource.length();
+	}
+
+	@Nonnull
+	public Maybe<String> get(@Nonnull Path path) {
+		Entry entry = this.entries.get(path);
+		if (entry == null) {
+			this.misses.incrementAndGet();
+			return Maybe.empty();
+		}
+		this.hits.incrementAndGet();
+		if (this.maxBytes != Long.MAX_VALUE) {
+			this.accesses.add(entry);
+			if (this.pendingAccesses.incrementAndGet() >= ACCESS_BUFFER_SIZE && this.lock.tryLock()) {
+				try {
+					this.applyAccesses();
+				} finally {
+					this.lock.unlock();
+				}
+			}
+		}
+		return Maybe.of(entry.resource);
+	}
+
+	/**
+	 * Checks for the presence of a resource without counting as an access.
+	 */
+	public boolean containsKey(@Nonnull Path path) {
+		return this.entries.containsKey(path);
+	}
+
+	public void put(@Nonnull Path path, @Nonnull String resource) {
+		this.lock.lock();
+		try {
+			this.applyAccesses();
+			this.remove(path);
+			long size = sizeOf(resource);
+			if (size > this.maxBytes) {
+				return;
+			}
+			while (this.sizeInBytes + size > this.maxBytes) {
+				this.remove(this.order.first().path);
+				this.evictions.incrementAndGet();
+			}
+			Entry entry = new Entry(path, resource);
+			this.entries.put(path, entry);
+			this.order.add(entry);
+			this.sizeInBytes += size;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public void invalidate(@Nonnull Path path) {
+		this.lock.lock();
+		try {
+			this.remove(path);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public void clear() {
+		this.lock.lock();
+		try {
+			this.applyAccesses();
+			for (Entry entry : this.entries.values()) {
+				entry.removed = true;
+			}
+			this.entries.clear();
+			this.order.clear();
+			this.sizeInBytes = 0;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	// with the lock held
+	private void remove(@Nonnull Path path) {
+		Entry entry = this.entries.remove(path);
+		if (entry != null) {
+			entry.removed = true;
+			this.order.remove(entry);
+			this.sizeInBytes -= sizeOf(entry.resource);
+		}
+	}
+
+	// with the lock held; accesses to entries removed since are dropped
+	private void applyAccesses() {
+		Entry entry;
+		while ((entry = this.accesses.poll()) != null) {
+			this.pendingAccesses.decrementAndGet();
+			if (!entry.removed) {
+				this.order.access(entry);
+			}
+		}
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+	public long getSizeInBytes() {
+		this.lock.lock();
+		try {
+			return this.sizeInBytes;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	public long getEvictionCount() {
+		return this.evictions.get();
+	}
+}
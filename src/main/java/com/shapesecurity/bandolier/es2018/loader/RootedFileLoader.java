@@ -1,5 +1,7 @@
 package com.shapesecurity.bandolier.es2018.loader;
 
+import com.shapesecurity.functional.data.Maybe;
+
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -7,10 +9,26 @@ import java.nio.file.Path;
 public class RootedFileLoader extends FileLoader {
     @Nonnull
     private final Path root;
+    // the snapshot the file loader queries with resolved paths
+    @Nonnull
+    private final Maybe<DirectorySnapshot> snapshot;
 
     public RootedFileLoader(@Nonnull Path root) {
         super();
         this.root = root.normalize();
+        this.snapshot = Maybe.empty();
+    }
+
+    public RootedFileLoader(@Nonnull Path root, @Nonnull ResourceCache cache) {
+        super(cache);
+        this.root = root.normalize();
+        this.snapshot = Maybe.empty();
+    }
+
+    public RootedFileLoader(@Nonnull Path root, @Nonnull ResourceCache cache, @Nonnull DirectorySnapshot snapshot) {
+        super(cache, snapshot);
+        this.root = root.normalize();
+        this.snapshot = Maybe.of(snapshot);
     }
 
     @Override
@@ -19,6 +37,14 @@ public class RootedFileLoader extends FileLoader {
         return super.existsBackend(this.resolve(path));
     }
 
+    @Override
+    public void invalidate(@Nonnull Path path) {
+        super.invalidate(path);
+        if (this.snapshot.isJust()) {
+            this.snapshot.fromJust().invalidate(this.resolve(path));
+        }
+    }
+
     @Override
     @Nonnull
     public String loadResourceBackend(@Nonnull Path path) throws IOException {
@@ -1,6 +1,7 @@
 package com.shapesecurity.bandolier.es2018.transformations;
 
 import com.shapesecurity.bandolier.es2018.ModuleWrapper;
+import com.shapesecurity.bandolier.es2018.ParallelHelper;
 import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
 import com.shapesecurity.functional.Pair;
 import com.shapesecurity.functional.Tuple3;
@@ -76,8 +77,6 @@ import com.shapesecurity.shift.es2018.path.BranchIterator;
 import com.shapesecurity.shift.es2018.reducer.Director;
 import com.shapesecurity.shift.es2018.reducer.Reducer;
 import com.shapesecurity.shift.es2018.reducer.WrappedReducer;
-import com.shapesecurity.shift.es2018.scope.GlobalScope;
-import com.shapesecurity.shift.es2018.scope.ScopeAnalyzer;
 import com.shapesecurity.shift.es2018.scope.ScopeLookup;
 import com.shapesecurity.shift.es2018.scope.Variable;
 
@@ -374,8 +373,8 @@ public class ImportExportConnector {
 		ImmutableSet<ModuleWrapper> wrappers = resolvedData.moduleMap.entries().map(Pair::right).uniqByIdentity();
 		HashTable<ModuleWrapper, HashTable<Variable, String>> originalRenamingMap = resolvedData.renamingMap;
 		VariableNameGenerator nameGenerator = resolvedData.nameGenerator;
-		HashTable<ModuleWrapper, GlobalScope> globalScopes = wrappers.foldAbelian((wrapper, acc) -> acc.put(wrapper, ScopeAnalyzer.analyze(wrapper.module)), HashTable.emptyUsingIdentity());
-		HashTable<ModuleWrapper, ScopeLookup> scopeLookups = wrappers.foldAbelian((wrapper, acc) -> acc.put(wrapper, new ScopeLookup(globalScopes.get(wrapper).fromJust())), HashTable.emptyUsingIdentity());
+		// only modules renamed by the collision resolver are analysed again
+		HashTable<ModuleWrapper, ScopeLookup> scopeLookups = wrappers.foldAbelian((wrapper, acc) -> acc.put(wrapper, resolvedData.analyses.analyze(wrapper.module).lookup), HashTable.emptyUsingIdentity());
 		// all exported variables, per module, tracks the export the import was delivered from.
 		HashTable<ModuleWrapper, HashTable<String, HashTable<Maybe<ModuleWrapper>, Pair<ExportDeclaration, Variable>>>> exported = HashTable.emptyUsingIdentity();
 		// namespace proxy export requests
@@ -651,6 +650,7 @@ public class ImportExportConnector {
 		final HashTable<Variable, String> finalRenamingMap = renamingMap;
 
 		HashMap<ModuleWrapper, Pair<ModuleWrapper, ImmutableList<ObjectProperty>>> reducedModuleMap = new HashMap<>();
+		ImmutableList<Tuple3<ModuleWrapper, Reducer<Node>, ImmutableList<ObjectProperty>>> reductions = ImmutableList.empty();
 
 		// prepare module export AST nodes
 		for (ModuleWrapper moduleWrapper : schedule) {
@@ -735,7 +735,14 @@ public class ImportExportConnector {
 					}
 				}
 			}
-			reducedModuleMap.put(moduleWrapper, Pair.of(new ModuleWrapper((Module) Director.reduceModule(reducer, moduleWrapper.module)), objectProperties));
+			reductions = reductions.cons(new Tuple3<>(moduleWrapper, reducer, objectProperties));
+		}
+
+		// the reducers only read tables that are final by now, so modules are reduced independently
+		reductions = reductions.reverse();
+		ImmutableList<ModuleWrapper> reducedModules = ParallelHelper.map(options.executor, reductions, reduction -> new ModuleWrapper((Module) Director.reduceModule(reduction.b, reduction.a.module)));
+		for (Pair<Tuple3<ModuleWrapper, Reducer<Node>, ImmutableList<ObjectProperty>>, ModuleWrapper> reduced : reductions.zipWith(Pair::of, reducedModules)) {
+			reducedModuleMap.put(reduced.left.a, Pair.of(reduced.right, reduced.left.c));
 		}
 
 		// replace all imports/exports as appropriate
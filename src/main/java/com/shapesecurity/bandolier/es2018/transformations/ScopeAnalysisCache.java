@@ -0,0 +1,106 @@
+package com.shapesecurity.bandolier.es2018.transformations;
+
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.scope.GlobalScope;
+import com.shapesecurity.shift.es2018.scope.ScopeAnalyzer;
+import com.shapesecurity.shift.es2018.scope.ScopeLookup;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Scope analysis results, keyed by the identity of the analysed module. Scopes and lookups refer to the exact nodes
+// of the module they were computed from, so a structurally equal but distinct module never shares an analysis.
+public final class ScopeAnalysisCache {
+
+	public static final class Analysis {
+		@Nonnull
+		public final GlobalScope scope;
+		@Nonnull
+		public final ScopeLookup lookup;
+
+		private Analysis(@Nonnull GlobalScope scope) {
+			this.scope = scope;
+			this.lookup = new ScopeLookup(scope);
+		}
+	}
+
+	@Nonnull
+	private final Map<Module, FutureTask<Analysis>> analyses = new IdentityHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	// Each module is analysed once even when several threads ask for it at the same time; the others wait for the
+	// result rather than duplicating the work.
+	@Nonnull
+	public Analysis analyze(@Nonnull Module module) {
+		FutureTask<Analysis> task;
+		boolean owner = false;
+		synchronized (this.analyses) {
+			task = this.analyses.get(module);
+			if (task == null) {
+				task = new FutureTask<>(() -> new Analysis(ScopeAnalyzer.analyze(module)));
+				this.analyses.put(module, task);
+				owner = true;
+			}
+		}
+		if (owner) {
+			this.misses.incrementAndGet();
+			task.run();
+		} else {
+			this.hits.incrementAndGet();
+		}
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			synchronized (this.analyses) {
+				this.analyses.remove(module, task);
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	// forgets the analyses of all other modules
+	public void retainAll(@Nonnull Collection<Module> modules) {
+		Set<Module> retained = Collections.newSetFromMap(new IdentityHashMap<>());
+		retained.addAll(modules);
+		synchronized (this.analyses) {
+			this.analyses.keySet().retainAll(retained);
+		}
+	}
+
+	public void clear() {
+		synchronized (this.analyses) {
+			this.analyses.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (this.analyses) {
+			return this.analyses.size();
+		}
+	}
+
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	public long getMissCount() {
+		return this.misses.get();
+	}
+}
@@ -1,7 +1,11 @@
 package com.shapesecurity.bandolier.es2018.transformations;
 
 import com.shapesecurity.bandolier.es2018.ModuleWrapper;
+import com.shapesecurity.bandolier.es2018.ParallelHelper;
+import com.shapesecurity.bandolier.es2018.bundlers.BundleMetrics;
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
 import com.shapesecurity.functional.Pair;
+import com.shapesecurity.functional.Tuple3;
 import com.shapesecurity.functional.data.HashTable;
 import com.shapesecurity.functional.data.ImmutableList;
 import com.shapesecurity.functional.data.ImmutableSet;
@@ -13,13 +17,13 @@ import com.shapesecurity.shift.es2018.ast.Module;
 import com.shapesecurity.shift.es2018.reducer.Director;
 import com.shapesecurity.shift.es2018.scope.GlobalScope;
 import com.shapesecurity.shift.es2018.scope.Reference;
-import com.shapesecurity.shift.es2018.scope.ScopeAnalyzer;
 import com.shapesecurity.shift.es2018.scope.ScopeLookup;
 import com.shapesecurity.shift.es2018.scope.Variable;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -37,11 +41,19 @@ public class VariableCollisionResolver {
 		public final VariableNameGenerator nameGenerator;
 		@Nonnull
 		public final HashTable<ModuleWrapper, HashTable<Variable, String>> renamingMap;
+		// analyses of the unrenamed modules carry over to later phases
+		@Nonnull
+		public final ScopeAnalysisCache analyses;
 
 		public ResolvedResult(@Nonnull HashTable<ModuleWrapper, ModuleWrapper> moduleMap, @Nonnull VariableNameGenerator nameGenerator, @Nonnull HashTable<ModuleWrapper, HashTable<Variable, String>> renamingMap) {
+			this(moduleMap, nameGenerator, renamingMap, new ScopeAnalysisCache());
+		}
+
+		public ResolvedResult(@Nonnull HashTable<ModuleWrapper, ModuleWrapper> moduleMap, @Nonnull VariableNameGenerator nameGenerator, @Nonnull HashTable<ModuleWrapper, HashTable<Variable, String>> renamingMap, @Nonnull ScopeAnalysisCache analyses) {
 			this.moduleMap = moduleMap;
 			this.nameGenerator = nameGenerator;
 			this.renamingMap = renamingMap;
+			this.analyses = analyses;
 		}
 	}
 
@@ -57,6 +69,28 @@ public class VariableCollisionResolver {
 		);
 	}
 
+	// Gives the names handed out by the generator to the renamed variables again, the shortest to those with the most
+	// declarations and references, which are where the bundle spells them out. Ties go by the names originally given,
+	// so that the result does not depend on the iteration order of the identity-keyed tables.
+	@Nonnull
+	private static HashTable<ModuleWrapper, HashTable<Variable, String>> rankNamesByOccurrences(@Nonnull HashTable<ModuleWrapper, HashTable<Variable, String>> renamingMaps) {
+		List<Tuple3<ModuleWrapper, Variable, String>> renamings = new ArrayList<>();
+		for (Pair<ModuleWrapper, HashTable<Variable, String>> module : renamingMaps) {
+			for (Pair<Variable, String> renaming : module.right) {
+				renamings.add(new Tuple3<>(module.left, renaming.left, renaming.right));
+			}
+		}
+		Comparator<String> shortestFirst = Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+		List<String> names = renamings.stream().map(renaming -> renaming.c).sorted(shortestFirst).collect(Collectors.toList());
+		renamings.sort(Comparator.<Tuple3<ModuleWrapper, Variable, String>>comparingInt(renaming -> -(renaming.b.declarations.length + renaming.b.references.length)).thenComparing(renaming -> renaming.c, shortestFirst));
+		HashTable<ModuleWrapper, HashTable<Variable, String>> ranked = renamingMaps.map(renaming -> HashTable.emptyUsingIdentity());
+		for (int i = 0; i < renamings.size(); ++i) {
+			Tuple3<ModuleWrapper, Variable, String> renaming = renamings.get(i);
+			ranked = ranked.put(renaming.a, ranked.get(renaming.a).fromJust().put(renaming.b, names.get(i)));
+		}
+		return ranked;
+	}
+
 	private static ImmutableList<Variable> throughVariables(ScopeLookup lookup, GlobalScope moduleScope) {
 		return orderedEntries(moduleScope.through).map(throughItem -> {
 			Reference reference = throughItem.right.head;
@@ -75,17 +109,55 @@ public class VariableCollisionResolver {
 		return ImmutableList.from(entries);
 	}
 
+	// what the resolver needs from each module, computed independently per module
+	private static final class ModuleVariables {
+		@Nonnull
+		final ModuleWrapper module;
+		@Nonnull
+		final ScopeAnalysisCache.Analysis analysis;
+		@Nonnull
+		final ImmutableSet<String> referencedNames;
+		@Nonnull
+		final MultiHashTable<String, Variable> declaredVariables;
+		@Nonnull
+		final ImmutableList<Variable> throughVariables;
+
+		ModuleVariables(@Nonnull ModuleWrapper module, @Nonnull ScopeAnalysisCache.Analysis analysis) {
+			this.module = module;
+			this.analysis = analysis;
+			this.referencedNames = VariableReferenceExtractor.extractAllReferencedVariableNames(analysis.scope);
+			this.declaredVariables = VariableDeclarationExtractor.extractAllDeclaredVariables(analysis.scope);
+			this.throughVariables = throughVariables(analysis.lookup, analysis.scope);
+		}
+	}
+
 	public static ResolvedResult resolveCollisions(@Nonnull HashTable<String, ModuleWrapper> modules) {
-		HashTable<ModuleWrapper, GlobalScope> globalScopes = modules.foldLeft((acc, pair) -> acc.put(pair.right, ScopeAnalyzer.analyze(pair.right.module)), HashTable.emptyUsingIdentity());
-		HashTable<ModuleWrapper, ScopeLookup> scopeLookups = modules.foldLeft((acc, pair) -> acc.put(pair.right, new ScopeLookup(globalScopes.get(pair.right).fromJust())), HashTable.emptyUsingIdentity());
-		ImmutableSet<String> allNames = modules.foldLeft((acc, module) -> acc.union(VariableReferenceExtractor.extractAllReferencedVariableNames(globalScopes.get(module.right).fromJust())), ImmutableSet.emptyUsingEquality());
-		ImmutableList<ModuleWrapper> sortedModules = ImmutableList.from(StreamSupport.stream(modules.entries().spliterator(), false).sorted(Comparator.comparing(pair1 -> pair1.left)).map(pair -> pair.right).collect(Collectors.toList()));
+		return resolveCollisions(BundlerOptions.DEFAULT_OPTIONS, modules, new ScopeAnalysisCache());
+	}
+
+	public static ResolvedResult resolveCollisions(@Nonnull HashTable<String, ModuleWrapper> modules, @Nonnull ScopeAnalysisCache analyses) {
+		return resolveCollisions(BundlerOptions.DEFAULT_OPTIONS, modules, analyses);
+	}
+
+	// Per-module analysis and renaming run on the options' executor, if any. Names are handed out sequentially in
+	// module specifier order, so the result does not depend on whether an executor was used. With frequency ranked names,
+	// the same names are then reassigned among the renamed variables.
+	public static ResolvedResult resolveCollisions(@Nonnull BundlerOptions options, @Nonnull HashTable<String, ModuleWrapper> modules, @Nonnull ScopeAnalysisCache analyses) {
+		ImmutableList<Pair<String, ModuleWrapper>> sortedModules = ImmutableList.from(StreamSupport.stream(modules.entries().spliterator(), false).sorted(Comparator.comparing(pair1 -> pair1.left)).collect(Collectors.toList()));
+		ImmutableList<ModuleVariables> moduleVariables = ParallelHelper.map(options.executor, sortedModules, pair -> {
+			BundleMetrics.Measurement analyze = BundleMetrics.start(options.metrics, "analyzeScope", pair.left);
+			ModuleVariables variables = new ModuleVariables(pair.right, analyses.analyze(pair.right.module));
+			analyze.stop();
+			return variables;
+		});
+		HashTable<ModuleWrapper, ScopeLookup> scopeLookups = moduleVariables.foldLeft((acc, variables) -> acc.put(variables.module, variables.analysis.lookup), HashTable.emptyUsingIdentity());
+		ImmutableSet<String> allNames = moduleVariables.foldLeft((acc, variables) -> acc.union(variables.referencedNames), ImmutableSet.emptyUsingEquality());
 
-		HashTable<String, ImmutableList<Pair<ModuleWrapper, ImmutableList<Variable>>>> allDeclaredVariables = sortedModules.foldLeft((acc, module) ->
-			VariableDeclarationExtractor.extractAllDeclaredVariables(globalScopes.get(module).fromJust()).entries()
+		HashTable<String, ImmutableList<Pair<ModuleWrapper, ImmutableList<Variable>>>> allDeclaredVariables = moduleVariables.foldLeft((acc, variables) ->
+			variables.declaredVariables.entries()
 				.foldLeft((subAcc, pair) ->
 					subAcc.put(pair.left, Pair.of(
-						module,
+						variables.module,
 						pair.right
 					)),
 					acc
@@ -100,9 +172,7 @@ public class VariableCollisionResolver {
 				.collect(Collectors.toList())
 			);
 
-		ImmutableList<Variable> throughVariables = sortedModules.foldLeft((acc, module) -> acc.append(
-			throughVariables(scopeLookups.get(module).fromJust(), globalScopes.get(module).fromJust())
-		), ImmutableList.empty());
+		ImmutableList<Variable> throughVariables = moduleVariables.foldLeft((acc, variables) -> acc.append(variables.throughVariables), ImmutableList.empty());
 
 		VariableNameGenerator nameGenerator = new VariableNameGenerator(allNames.union(throughVariables.map(variable -> variable.name).uniqByEquality()));
 
@@ -128,13 +198,20 @@ public class VariableCollisionResolver {
 				)
 			);
 
+		if (options.frequencyRankedNames) {
+			renamingMaps = rankNamesByOccurrences(renamingMaps);
+		}
+
 		// missing modules has no renaming to do
 		ImmutableSet<ModuleWrapper> missingModules = modules.entries().map(pair -> pair.right).uniqByIdentity();
+		ImmutableList<Pair<ModuleWrapper, HashTable<Variable, String>>> renamings = ImmutableList.from(StreamSupport.stream(renamingMaps.spliterator(), false).collect(Collectors.toList()));
+		ImmutableList<ModuleWrapper> renamedModules = ParallelHelper.map(options.executor, renamings, modulePair ->
+			new ModuleWrapper((Module) Director.reduceModule(new VariableRenamingReducer(modulePair.right, Maybe.empty(), scopeLookups.get(modulePair.left).fromJust()), modulePair.left.module))
+		);
 		HashTable<ModuleWrapper, ModuleWrapper> finishedModules = HashTable.emptyUsingIdentity();
-		for (Pair<ModuleWrapper, HashTable<Variable, String>> modulePair : renamingMaps) {
-			ModuleWrapper newModule = new ModuleWrapper((Module) Director.reduceModule(new VariableRenamingReducer(modulePair.right, Maybe.empty(), scopeLookups.get(modulePair.left).fromJust()), modulePair.left.module));
-			finishedModules = finishedModules.put(modulePair.left, newModule);
-			missingModules = missingModules.remove(modulePair.left);
+		for (Pair<Pair<ModuleWrapper, HashTable<Variable, String>>, ModuleWrapper> renamed : renamings.zipWith(Pair::of, renamedModules)) {
+			finishedModules = finishedModules.put(renamed.left.left, renamed.right);
+			missingModules = missingModules.remove(renamed.left.left);
 		}
 		final HashTable<ModuleWrapper, ModuleWrapper> finalFinishedModules = finishedModules;
 		renamingMaps = renamingMaps.entries().foldLeft((acc, pair) -> acc.put(finalFinishedModules.get(pair.left).fromJust(), pair.right), HashTable.emptyUsingIdentity());
@@ -144,7 +221,7 @@ public class VariableCollisionResolver {
 			finishedModules = finishedModules.put(module, module);
 		}
 
-		return new ResolvedResult(finishedModules, nameGenerator, renamingMaps);
+		return new ResolvedResult(finishedModules, nameGenerator, renamingMaps, analyses);
 	}
 
 }
@@ -0,0 +1,113 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.PiercedModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.FileLoader;
+import com.shapesecurity.bandolier.es2018.loader.ModuleCachingLoader;
+import com.shapesecurity.bandolier.es2018.loader.NodeResolver;
+import com.shapesecurity.functional.data.Maybe;
+import com.shapesecurity.shift.es2018.codegen.CodeGen;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BatchBundlerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(Path path, String source) throws Exception {
+		Files.write(path, source.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(Path path) throws Exception {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	private static String expected(Path entry) throws Exception {
+		FileLoader loader = new FileLoader();
+		return CodeGen.codeGen(Bundler.bundle(BundlerOptions.DEFAULT_OPTIONS, entry, new NodeResolver(loader), loader, new PiercedModuleBundler())) + System.lineSeparator();
+	}
+
+	@Test
+	public void testBundleEach() throws Exception {
+		Path root = this.folder.getRoot().toPath();
+		write(root.resolve("shared.js"), "export var x = 1;");
+		Path out = root.resolve("out");
+		Map<Path, Path> targets = new LinkedHashMap<>();
+		for (int i = 0; i < 8; ++i) {
+			Path entry = root.resolve("entry" + i + ".js");
+			write(entry, "import { x } from './shared.js'; console.log(x + " + i + ");");
+			targets.put(entry, BatchBundler.outputFor(entry, out));
+		}
+		Path missing = root.resolve("missing.js");
+		targets.put(missing, BatchBundler.outputFor(missing, out));
+
+		ModuleCachingLoader loader = new ModuleCachingLoader(new FileLoader());
+		Map<Path, Exception> failures = BatchBundler.bundleEach(BundlerOptions.DEFAULT_OPTIONS, targets, new NodeResolver(loader), loader, PiercedModuleBundler::new, 3);
+
+		assertEquals(Collections.singleton(missing), failures.keySet());
+		assertFalse(Files.exists(out.resolve("missing.js")));
+		for (int i = 0; i < 8; ++i) {
+			Path entry = root.resolve("entry" + i + ".js");
+			assertEquals(expected(entry), read(out.resolve("entry" + i + ".js")));
+		}
+		// the shared module is cached once for all of its importers
+		assertEquals(9, loader.getCache().size());
+	}
+
+	@Test
+	public void testOutputsAreReplacedWhole() throws Exception {
+		Path root = this.folder.getRoot().toPath();
+		Path entry = root.resolve("entry.js");
+		write(entry, "console.log(1);");
+		Path out = root.resolve("out");
+		Map<Path, Path> targets = Collections.singletonMap(entry, BatchBundler.outputFor(entry, out));
+		FileLoader loader = new FileLoader();
+		assertEquals(Collections.emptyMap(), BatchBundler.bundleEach(BundlerOptions.DEFAULT_OPTIONS, targets, new NodeResolver(loader), loader, PiercedModuleBundler::new, 1));
+		write(entry, "console.log(2);");
+		loader = new FileLoader();
+		assertEquals(Collections.emptyMap(), BatchBundler.bundleEach(BundlerOptions.DEFAULT_OPTIONS, targets, new NodeResolver(loader), loader, PiercedModuleBundler::new, 1));
+		assertEquals(expected(entry), read(out.resolve("entry.js")));
+
+		// when the bundle cannot be put in place, nothing is left next to it
+		Path blocked = root.resolve("blocked");
+		Files.createDirectories(blocked.resolve("entry.js/inside"));
+		targets = Collections.singletonMap(entry, BatchBundler.outputFor(entry, blocked));
+		assertEquals(targets.keySet(), BatchBundler.bundleEach(BundlerOptions.DEFAULT_OPTIONS, targets, new NodeResolver(loader), loader, PiercedModuleBundler::new, 1).keySet());
+		try (Stream<Path> files = Files.list(out)) {
+			assertEquals(Collections.singletonList(out.resolve("entry.js")), files.collect(Collectors.toList()));
+		}
+		try (Stream<Path> files = Files.list(blocked)) {
+			assertEquals(Collections.singletonList(blocked.resolve("entry.js")), files.collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void testReadManifest() throws Exception {
+		Path root = this.folder.getRoot().toPath();
+		Path manifest = root.resolve("bundles.txt");
+		write(manifest, "# entry points\na.js\tdist/first.js\n\nsrc/b.js\n");
+		Map<Path, Path> targets = BatchBundler.readManifest(manifest, Maybe.of(root.resolve("out")));
+		assertEquals(Arrays.asList(root.resolve("a.js"), root.resolve("src/b.js")), Arrays.asList(targets.keySet().toArray()));
+		assertEquals(root.resolve("dist/first.js"), targets.get(root.resolve("a.js")));
+		assertEquals(root.resolve("out/b.js"), targets.get(root.resolve("src/b.js")));
+		assertEquals(Collections.emptyList(), BatchBundler.conflictingOutputs(targets));
+
+		targets.put(root.resolve("other/b.js"), root.resolve("out/b.js"));
+		assertEquals(Collections.singletonList(root.resolve("out/b.js")), BatchBundler.conflictingOutputs(targets));
+	}
+}
@@ -0,0 +1,71 @@
+package com.shapesecurity.bandolier.es2018;
+
+import javax.annotation.Nonnull;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+// module graphs for the benchmarks, all with their entry point at ENTRY
+final class BenchmarkGraphs {
+
+	static final String ENTRY = "/root/benchmark.js";
+
+	// fixtures from BundlerTest that together cover chains, cycles, re-exports, namespaces and JSON
+	private static final String[] FIXTURE_ENTRIES = {
+		"/root/lib1/js9.js",
+		"/root/lib1/js13.js",
+		"/root/is_even.js",
+		"/root/importExportAllFrom.js",
+		"/root/importExportFunction.js",
+		"/root/importAll.js",
+		"/root/importDefaultAndName.js",
+		"/root/loadJson.js",
+		"/root/renaming.js",
+		"/root/shadowing/e.js",
+	};
+
+	private BenchmarkGraphs() {
+
+	}
+
+	/**
+	 * @param name "fixtures", or "generated-" followed by a number of modules
+	 * @return the sources of the graph's modules, by path
+	 */
+	@Nonnull
+	static Map<String, String> graph(@Nonnull String name) {
+		if (name.equals("fixtures")) {
+			return fixtures();
+		} else if (name.startsWith("generated-")) {
+			return generated(Integer.parseInt(name.substring("generated-".length())));
+		}
+		throw new IllegalArgumentException("Unknown graph: " + name);
+	}
+
+	@Nonnull
+	private static Map<String, String> fixtures() {
+		Map<String, String> modules = new HashMap<>(BundlerTest.FIXTURES);
+		StringBuilder entry = new StringBuilder();
+		for (int i = 0; i < FIXTURE_ENTRIES.length; ++i) {
+			entry.append("import { result as r").append(i).append(" } from '").append(FIXTURE_ENTRIES[i]).append("';\n");
+		}
+		entry.append("export var result = [");
+		for (int i = 0; i < FIXTURE_ENTRIES.length; ++i) {
+			entry.append(i == 0 ? "" : ", ").append('r').append(i);
+		}
+		entry.append("];\n");
+		modules.put(ENTRY, entry.toString());
+		return modules;
+	}
+
+	// a graph from GraphGenerator with its default settings, re-exported from ENTRY
+	@Nonnull
+	private static Map<String, String> generated(int size) {
+		Map<String, String> modules = new HashMap<>();
+		for (Map.Entry<Path, String> module : new GraphGenerator(size).sources().entrySet()) {
+			modules.put(module.getKey().toString(), module.getValue());
+		}
+		modules.put(ENTRY, "export { result } from '" + GraphGenerator.ENTRY + "';");
+		return modules;
+	}
+}
@@ -0,0 +1,26 @@
+package com.shapesecurity.bandolier.es2018;
+
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the JMH benchmarks with allocation rates from the GC profiler. Excluded from the normal test run; run with
+// mvn test -Dtest=BenchmarkTest, optionally with -Dbenchmarks=REGEX to select benchmarks (e.g. PhaseBenchmark) and
+// -Dbenchmarks.result=FILE to also write the results as JSON.
+public class BenchmarkTest {
+
+	@Test
+	public void runBenchmarks() throws Exception {
+		ChainedOptionsBuilder options = new OptionsBuilder()
+			.include(System.getProperty("benchmarks", BundlerBenchmark.class.getSimpleName() + "|" + PhaseBenchmark.class.getSimpleName()))
+			.addProfiler(GCProfiler.class);
+		String result = System.getProperty("benchmarks.result");
+		if (result != null) {
+			options = options.result(result).resultFormat(ResultFormatType.JSON);
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,101 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.PiercedModuleBundler;
+import com.shapesecurity.bandolier.es2018.bundlers.StandardModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.FileLoader;
+import com.shapesecurity.bandolier.es2018.loader.NodeResolver;
+import com.shapesecurity.shift.es2018.codegen.CodeGen;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class BundleCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(Path path, String source) throws Exception {
+		Files.write(path, source.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// a fresh cache object over the same directory, as a new process would use, bundling with fresh loaders
+	private static String bundle(Path cacheDir, BundlerOptions options, Path entry, BundleCache[] last) throws Exception {
+		BundleCache cache = new BundleCache(cacheDir);
+		last[0] = cache;
+		FileLoader loader = new FileLoader();
+		return cache.bundle(options, entry, new NodeResolver(loader), loader, new PiercedModuleBundler());
+	}
+
+	private static String expected(BundlerOptions options, Path entry) throws Exception {
+		FileLoader loader = new FileLoader();
+		return CodeGen.codeGen(Bundler.bundle(options, entry, new NodeResolver(loader), loader, new PiercedModuleBundler()));
+	}
+
+	private static void assertHit(boolean hit, BundleCache cache) {
+		assertEquals(hit ? 1 : 0, cache.getHitCount());
+		assertEquals(hit ? 0 : 1, cache.getMissCount());
+	}
+
+	@Test
+	public void testReusesUnchangedBundles() throws Exception {
+		Path root = this.folder.newFolder("src").toPath();
+		Path cacheDir = this.folder.newFolder("cache").toPath();
+		Path entry = root.resolve("main.js");
+		write(entry, "import { b } from './b'; import data from './data.json'; console.log(b, data);");
+		write(root.resolve("b.js"), "export var b = 1;");
+		write(root.resolve("data.json"), "{\"a\": [1, 2]}");
+		BundleCache[] cache = new BundleCache[1];
+
+		assertEquals(expected(BundlerOptions.DEFAULT_OPTIONS, entry), bundle(cacheDir, BundlerOptions.DEFAULT_OPTIONS, entry, cache));
+		assertHit(false, cache[0]);
+		assertEquals(expected(BundlerOptions.DEFAULT_OPTIONS, entry), bundle(cacheDir, BundlerOptions.DEFAULT_OPTIONS, entry, cache));
+		assertHit(true, cache[0]);
+
+		// other options or bundlers get their own entries
+		assertEquals(expected(BundlerOptions.SPEC_OPTIONS, entry), bundle(cacheDir, BundlerOptions.SPEC_OPTIONS, entry, cache));
+		assertHit(false, cache[0]);
+		FileLoader loader = new FileLoader();
+		new BundleCache(cacheDir).bundle(BundlerOptions.DEFAULT_OPTIONS, entry, new NodeResolver(loader), loader, new StandardModuleBundler());
+		assertEquals(expected(BundlerOptions.DEFAULT_OPTIONS, entry), bundle(cacheDir, BundlerOptions.DEFAULT_OPTIONS, entry, cache));
+		assertHit(true, cache[0]);
+
+		// a changed dependency
+		write(root.resolve("data.json"), "{\"a\": [1, 2, 3]}");
+		assertEquals(expected(BundlerOptions.DEFAULT_OPTIONS, entry), bundle(cacheDir, BundlerOptions.DEFAULT_OPTIONS, entry, cache));
+		assertHit(false, cache[0]);
+
+		// a new file that an unchanged import now resolves to
+		write(root.resolve("b"), "export var b = 2;");
+		assertEquals(expected(BundlerOptions.DEFAULT_OPTIONS, entry), bundle(cacheDir, BundlerOptions.DEFAULT_OPTIONS, entry, cache));
+		assertHit(false, cache[0]);
+		assertEquals(expected(BundlerOptions.DEFAULT_OPTIONS, entry), bundle(cacheDir, BundlerOptions.DEFAULT_OPTIONS, entry, cache));
+		assertHit(true, cache[0]);
+	}
+
+	@Test
+	public void testIgnoresCorruptEntries() throws Exception {
+		Path root = this.folder.newFolder("src").toPath();
+		Path cacheDir = this.folder.newFolder("cache").toPath();
+		Path entry = root.resolve("main.js");
+		write(entry, "console.log(1);");
+		BundleCache[] cache = new BundleCache[1];
+		bundle(cacheDir, BundlerOptions.DEFAULT_OPTIONS, entry, cache);
+		try (Stream<Path> entries = Files.list(cache[0].getDirectory())) {
+			for (Path file : (Iterable<Path>) entries::iterator) {
+				write(file, "garbage");
+			}
+		}
+		assertEquals(expected(BundlerOptions.DEFAULT_OPTIONS, entry), bundle(cacheDir, BundlerOptions.DEFAULT_OPTIONS, entry, cache));
+		assertHit(false, cache[0]);
+		assertEquals(expected(BundlerOptions.DEFAULT_OPTIONS, entry), bundle(cacheDir, BundlerOptions.DEFAULT_OPTIONS, entry, cache));
+		assertHit(true, cache[0]);
+	}
+}
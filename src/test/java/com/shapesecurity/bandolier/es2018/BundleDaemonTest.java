@@ -0,0 +1,156 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.PiercedModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.FileLoader;
+import com.shapesecurity.bandolier.es2018.loader.NodeResolver;
+import com.shapesecurity.shift.es2018.codegen.CodeGen;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BundleDaemonTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String expected(Path entry) throws Exception {
+		FileLoader loader = new FileLoader();
+		return CodeGen.codeGen(Bundler.bundle(BundlerOptions.DEFAULT_OPTIONS, entry, new NodeResolver(loader), loader, new PiercedModuleBundler())) + "\n";
+	}
+
+	@Test
+	public void testRequestsNeedTheToken() throws Exception {
+		Path root = this.folder.getRoot().toPath();
+		Path entry = root.resolve("main.js");
+		Files.write(entry, "console.log(1);".getBytes(StandardCharsets.UTF_8));
+		Path tokenFile = root.resolve("daemon.token");
+		BundleDaemon daemon = new BundleDaemon(0, 1, BundleDaemon.DEFAULT_CACHE_BYTES, tokenFile, new PrintStream(new ByteArrayOutputStream()));
+		if (tokenFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(tokenFile));
+		}
+		Thread server = new Thread(() -> {
+			try {
+				daemon.serve();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		server.start();
+		try {
+			for (String wrong : new String[]{ "", "default " + entry, BundleDaemon.readToken(tokenFile).substring(1) }) {
+				try {
+					BundleDaemon.request(daemon.getPort(), wrong, "default", entry, new StringWriter());
+					fail("expected the daemon to refuse the request");
+				} catch (IOException e) {
+					assertEquals("ERROR Wrong token", e.getMessage());
+				}
+				try {
+					BundleDaemon.shutdown(daemon.getPort(), wrong);
+					fail("expected the daemon to refuse the request");
+				} catch (IOException e) {
+					assertEquals("ERROR Wrong token", e.getMessage());
+				}
+			}
+		} finally {
+			BundleDaemon.shutdown(daemon.getPort(), BundleDaemon.readToken(tokenFile));
+			server.join();
+		}
+	}
+
+	@Test
+	public void testIncompleteResponsesFail() throws Exception {
+		String[] responses = {
+			// the connection drops partway through the bundle
+			"OK\n(function(){\nconsole.log(",
+			// bundling fails once the bundle is being sent
+			"OK\n(function(){\nconsole.log(\nERROR failed",
+			// the trailer does not match what was received
+			"OK\n(function(){}());\nEND 100 bundle 1ms",
+			"OK\n(function(){}());\nbundle 1ms",
+		};
+		try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			Thread daemon = new Thread(() -> {
+				for (String response : responses) {
+					try (Socket socket = server.accept()) {
+						socket.getOutputStream().write(response.getBytes(StandardCharsets.UTF_8));
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			daemon.start();
+			for (String response : responses) {
+				try {
+					BundleDaemon.request(server.getLocalPort(), "token", "default", Paths.get("/main.js"), new StringWriter());
+					fail("expected an incomplete response to fail: " + response);
+				} catch (IOException e) {
+					assertEquals(response.contains("ERROR") ? "ERROR failed" : "Incomplete response from daemon", e.getMessage());
+				}
+			}
+			daemon.join();
+		}
+	}
+
+	@Test
+	public void testRequestsReuseParsedModules() throws Exception {
+		Path root = this.folder.getRoot().toPath();
+		Path entry = root.resolve("main.js");
+		Files.write(entry, "import { b } from './b.js'; console.log(b);".getBytes(StandardCharsets.UTF_8));
+		Files.write(root.resolve("b.js"), "export var b = 1;".getBytes(StandardCharsets.UTF_8));
+
+		Path tokenFile = root.resolve("tokens/daemon.token");
+		BundleDaemon daemon = new BundleDaemon(0, 2, BundleDaemon.DEFAULT_CACHE_BYTES, tokenFile, new PrintStream(new ByteArrayOutputStream()));
+		String token = BundleDaemon.readToken(tokenFile);
+		Thread server = new Thread(() -> {
+			try {
+				daemon.serve();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		server.start();
+		try {
+			StringWriter first = new StringWriter();
+			String timings = BundleDaemon.request(daemon.getPort(), token, "default", entry, first);
+			assertEquals(expected(entry), first.toString());
+			assertTrue(timings, timings.startsWith("bundle ") && timings.endsWith("parsed 2, reused 0"));
+
+			// unchanged files are not parsed again, changed ones are
+			Files.write(root.resolve("b.js"), "export var b = 2;".getBytes(StandardCharsets.UTF_8));
+			StringWriter second = new StringWriter();
+			timings = BundleDaemon.request(daemon.getPort(), token, "default", entry, second);
+			assertEquals(expected(entry), second.toString());
+			assertTrue(timings, timings.endsWith("parsed 1, reused 1"));
+
+			try {
+				BundleDaemon.request(daemon.getPort(), token, "default", root.resolve("missing.js"), new StringWriter());
+				fail("expected the daemon to report an error");
+			} catch (IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("ERROR "));
+			}
+		} finally {
+			BundleDaemon.shutdown(daemon.getPort(), token);
+			server.join();
+		}
+		assertFalse(Files.exists(tokenFile));
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Shape Security, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.PiercedModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.DirectorySnapshot;
+import com.shapesecurity.bandolier.es2018.loader.FileSystemResolver;
+import com.shapesecurity.bandolier.es2018.loader.IResolver;
+import com.shapesecurity.bandolier.es2018.loader.MapLoader;
+import com.shapesecurity.bandolier.es2018.loader.ModuleLoaderException;
+import com.shapesecurity.bandolier.es2018.loader.NodeResolver;
+import com.shapesecurity.bandolier.es2018.loader.ResourceCache;
+import com.shapesecurity.bandolier.es2018.loader.RootedFileLoader;
+import com.shapesecurity.bandolier.es2018.transformations.ScopeAnalysisCache;
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.codegen.CodeGen;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class BundleSessionTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Map<Path, String> files() {
+		Map<Path, String> files = new HashMap<>();
+		files.put(Paths.get("/root/main.js"), "import { b } from './b.js'; import { c } from './c.js'; console.log(b + c);");
+		files.put(Paths.get("/root/b.js"), "import { d } from './d.js'; export var b = d + 1;");
+		files.put(Paths.get("/root/c.js"), "export var c = 2;");
+		files.put(Paths.get("/root/d.js"), "export var d = 3;");
+		return files;
+	}
+
+	// what a fresh build of the same files produces
+	private static String expected(Map<Path, String> files, IResolver resolver) throws ModuleLoaderException {
+		MapLoader loader = new MapLoader(new HashMap<>(files));
+		return CodeGen.codeGen(Bundler.bundle(BundlerOptions.DEFAULT_OPTIONS, Paths.get("/root/main.js"), resolver, loader, new PiercedModuleBundler()));
+	}
+
+	@Test
+	public void testRebundleReparsesOnlyChangedModules() throws Throwable {
+		Map<Path, String> files = files();
+		BundleSession session = new BundleSession(BundlerOptions.DEFAULT_OPTIONS, Paths.get("/root/main.js"), new FileSystemResolver(), new MapLoader(files), new PiercedModuleBundler());
+		Assert.assertEquals(expected(files, new FileSystemResolver()), CodeGen.codeGen(session.bundle()));
+		Assert.assertEquals(4, session.getParseCount());
+		Module c = session.getModules().get("/root/c.js");
+
+		Assert.assertSame(session.bundle(), session.bundle());
+		Assert.assertEquals(4, session.getParseCount());
+
+		files.put(Paths.get("/root/d.js"), "export var d = 30;");
+		Assert.assertEquals(expected(files, new FileSystemResolver()), CodeGen.codeGen(session.rebundle(Collections.singleton(Paths.get("/root/d.js")))));
+		Assert.assertEquals(5, session.getParseCount());
+		Assert.assertSame(c, session.getModules().get("/root/c.js"));
+	}
+
+	@Test
+	public void testRebundleFollowsGraphChanges() throws Throwable {
+		Map<Path, String> files = files();
+		BundleSession session = new BundleSession(BundlerOptions.DEFAULT_OPTIONS, Paths.get("/root/main.js"), new FileSystemResolver(), new MapLoader(files), new PiercedModuleBundler());
+		session.bundle();
+
+		files.put(Paths.get("/root/b.js"), "import { e } from './e.js'; export var b = e + 1;");
+		files.put(Paths.get("/root/e.js"), "export var e = 4;");
+		String code = CodeGen.codeGen(session.rebundle(Arrays.asList(Paths.get("/root/b.js"), Paths.get("/root/e.js"))));
+		Assert.assertEquals(expected(files, new FileSystemResolver()), code);
+		Assert.assertEquals(6, session.getParseCount());
+		Assert.assertEquals(Arrays.asList("/root/main.js", "/root/b.js", "/root/c.js", "/root/e.js"), Arrays.asList(session.getModules().keySet().toArray()));
+	}
+
+	@Test
+	public void testRebundleAfterFailure() throws Throwable {
+		Map<Path, String> files = files();
+		BundleSession session = new BundleSession(BundlerOptions.DEFAULT_OPTIONS, Paths.get("/root/main.js"), new FileSystemResolver(), new MapLoader(files), new PiercedModuleBundler());
+		session.bundle();
+
+		files.put(Paths.get("/root/c.js"), "export var");
+		try {
+			session.rebundle(Collections.singleton(Paths.get("/root/c.js")));
+			Assert.fail();
+		} catch (ModuleLoaderException ignored) {
+		}
+
+		files.put(Paths.get("/root/c.js"), "export var c = 20;");
+		Assert.assertEquals(expected(files, new FileSystemResolver()), CodeGen.codeGen(session.bundle()));
+	}
+
+	@Test
+	public void testRebundleSeesNewResolutions() throws Throwable {
+		Map<Path, String> files = new HashMap<>();
+		files.put(Paths.get("/root/main.js"), "import { x } from 'x'; console.log(x);");
+		files.put(Paths.get("/root/node_modules/x/index.js"), "export var x = 'directory';");
+		MapLoader loader = new MapLoader(files);
+		BundleSession session = new BundleSession(BundlerOptions.DEFAULT_OPTIONS, Paths.get("/root/main.js"), new NodeResolver(loader), loader, new PiercedModuleBundler());
+		session.bundle();
+		Assert.assertTrue(session.getModules().containsKey("/root/node_modules/x/index.js"));
+
+		// a file takes precedence over a directory of the same name
+		files.put(Paths.get("/root/node_modules/x.js"), "export var x = 'file';");
+		String code = CodeGen.codeGen(session.rebundle(Collections.singleton(Paths.get("/root/node_modules/x.js"))));
+		Assert.assertEquals(expected(files, new NodeResolver(new MapLoader(files))), code);
+		Assert.assertTrue(session.getModules().containsKey("/root/node_modules/x.js"));
+		Assert.assertFalse(session.getModules().containsKey("/root/node_modules/x/index.js"));
+	}
+
+	@Test
+	public void testRebundleSeesNewFilesUnderRoot() throws Throwable {
+		Path root = this.folder.getRoot().toPath();
+		Files.createDirectories(root.resolve("node_modules/x"));
+		Files.write(root.resolve("main.js"), "import { x } from 'x'; console.log(x);".getBytes(StandardCharsets.UTF_8));
+		Files.write(root.resolve("node_modules/x/index.js"), "export var x = 'directory';".getBytes(StandardCharsets.UTF_8));
+		RootedFileLoader loader = new RootedFileLoader(root, new ResourceCache(), new DirectorySnapshot());
+		BundleSession session = new BundleSession(BundlerOptions.DEFAULT_OPTIONS, Paths.get("/main.js"), new NodeResolver(loader), loader, new PiercedModuleBundler());
+		session.bundle();
+		Assert.assertTrue(session.getModules().containsKey("/node_modules/x/index.js"));
+
+		Files.write(root.resolve("node_modules/x.js"), "export var x = 'file';".getBytes(StandardCharsets.UTF_8));
+		session.rebundle(Collections.singleton(Paths.get("/node_modules/x.js")));
+		Assert.assertTrue(session.getModules().containsKey("/node_modules/x.js"));
+		Assert.assertFalse(session.getModules().containsKey("/node_modules/x/index.js"));
+	}
+
+	@Test
+	public void testRebundleReusesScopeAnalyses() throws Throwable {
+		Map<Path, String> files = files();
+		ScopeAnalysisCache analyses = new ScopeAnalysisCache();
+		BundleSession session = new BundleSession(BundlerOptions.DEFAULT_OPTIONS, Paths.get("/root/main.js"), new FileSystemResolver(), new MapLoader(files), new PiercedModuleBundler(analyses));
+		session.bundle();
+		// no names collide, so every module is analysed once for the whole pipeline
+		Assert.assertEquals(4, analyses.getMissCount());
+
+		files.put(Paths.get("/root/d.js"), "export var d = 30;");
+		Assert.assertEquals(expected(files, new FileSystemResolver()), CodeGen.codeGen(session.rebundle(Collections.singleton(Paths.get("/root/d.js")))));
+		Assert.assertEquals(5, analyses.getMissCount());
+		Assert.assertEquals(4, analyses.size());
+	}
+}
@@ -0,0 +1,65 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.IModuleBundler;
+import com.shapesecurity.bandolier.es2018.bundlers.PiercedModuleBundler;
+import com.shapesecurity.bandolier.es2018.bundlers.StandardModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.FileSystemResolver;
+import com.shapesecurity.bandolier.es2018.loader.IResolver;
+import com.shapesecurity.bandolier.es2018.loader.ModuleCachingLoader;
+import com.shapesecurity.shift.es2018.ast.Script;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+// Bundler.bundle end to end, from sources in memory to a Script
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundlerBenchmark {
+
+	@Param({"fixtures", "generated-100", "generated-1000"})
+	public String graph;
+
+	@Param({"pierced", "standard"})
+	public String bundler;
+
+	// whether parsed modules are reused between iterations, leaving out the cost of parsing
+	@Param({"false", "true"})
+	public boolean cacheParses;
+
+	private TestLoader sources;
+	private ModuleCachingLoader cachingLoader;
+	private final IResolver resolver = new FileSystemResolver();
+	private final Path entry = Paths.get(BenchmarkGraphs.ENTRY);
+
+	@Setup
+	public void setUp() {
+		this.sources = new TestLoader(BenchmarkGraphs.graph(this.graph));
+		this.cachingLoader = new ModuleCachingLoader(this.sources);
+	}
+
+	private IModuleBundler newBundler() {
+		return this.bundler.equals("pierced") ? new PiercedModuleBundler() : new StandardModuleBundler();
+	}
+
+	@Benchmark
+	public Script bundle() throws Exception {
+		return Bundler.bundle(BundlerOptions.SPEC_OPTIONS, this.entry, this.resolver, this.cacheParses ? this.cachingLoader : this.sources, this.newBundler());
+	}
+}
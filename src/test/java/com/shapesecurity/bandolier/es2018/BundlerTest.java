@@ -15,27 +15,50 @@
  */
 package com.shapesecurity.bandolier.es2018;
 
+import com.shapesecurity.bandolier.es2018.bundlers.BundleLimits;
+import com.shapesecurity.bandolier.es2018.bundlers.BundleMetrics;
 import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.CancellationToken;
+import com.shapesecurity.bandolier.es2018.bundlers.ChunkedBundle;
+import com.shapesecurity.bandolier.es2018.bundlers.ChunkingModuleBundler;
+import com.shapesecurity.bandolier.es2018.bundlers.EarlyErrorCache;
+import com.shapesecurity.bandolier.es2018.bundlers.IModuleBundler;
 import com.shapesecurity.bandolier.es2018.bundlers.PiercedModuleBundler;
 import com.shapesecurity.bandolier.es2018.bundlers.StandardModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.BundleLimitException;
 import com.shapesecurity.bandolier.es2018.loader.FileSystemResolver;
 import com.shapesecurity.bandolier.es2018.loader.IResolver;
 import com.shapesecurity.bandolier.es2018.loader.IResourceLoader;
+import com.shapesecurity.bandolier.es2018.loader.ModuleLoaderException;
 import com.shapesecurity.bandolier.es2018.loader.MapModulesLoader;
+import com.shapesecurity.bandolier.es2018.loader.ModuleCachingLoader;
+import com.shapesecurity.bandolier.es2018.transformations.ScopeAnalysisCache;
+import com.shapesecurity.functional.Pair;
 import com.shapesecurity.functional.data.ImmutableList;
 import com.shapesecurity.shift.es2018.ast.Module;
 import com.shapesecurity.shift.es2018.ast.Script;
+import com.shapesecurity.shift.es2018.parser.EarlyError;
+import com.shapesecurity.shift.es2018.parser.EarlyErrorChecker;
 import com.shapesecurity.shift.es2018.parser.JsError;
 import com.shapesecurity.shift.es2018.parser.Parser;
 import junit.framework.TestCase;
 import org.junit.Test;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.shapesecurity.bandolier.es2018.TestUtils.getResultFromGraal;
@@ -43,6 +66,8 @@ import static com.shapesecurity.bandolier.es2018.TestUtils.testResult;
 import static com.shapesecurity.bandolier.es2018.TestUtils.testResultPierced;
 
 public class BundlerTest extends TestCase {
+	// the sources of the modules below, by path
+	static final Map<String, String> FIXTURES;
 	private static TestLoader loader;
 	private static IResolver resolver = new FileSystemResolver();
 
@@ -125,6 +150,7 @@ public class BundlerTest extends TestCase {
 		modules.put("/root/shadowing/d.js", "export function a() {return 142;}; export var Math = { pow: function(z, w){ return z + w; } };");
 		modules.put("/root/shadowing/e.js", "import { a as b, Math } from './d.js';\n" +
 			"export var result = Math.pow(b(), 2); (function(){var Math = {};})();");
+		FIXTURES = Collections.unmodifiableMap(modules);
 		loader = new TestLoader(modules);
 	}
 
@@ -153,6 +179,17 @@ public class BundlerTest extends TestCase {
 		testDependencyCollector("import json from '/json.json'", "/json.json");
 	}
 
+	// why bundling stopped, which must have been because of a limit
+	private static BundleLimitException.Reason stoppedBy(BundlerOptions options, Path entry, IResourceLoader loader, IModuleBundler bundler) throws Exception {
+		try {
+			Bundler.bundle(options, entry, resolver, loader, bundler);
+		} catch (BundleLimitException e) {
+			return e.reason;
+		}
+		fail("expected a BundleLimitException");
+		return null;
+	}
+
 	private static void testDependencyCollector(String code, String... dependencies) throws JsError {
 		Module module = Parser.parseModule(code);
 		ImmutableList<String> deps = ModuleHelper.getModuleDependencies(module);
@@ -312,6 +349,8 @@ public class BundlerTest extends TestCase {
 		modules.put("/b.js", "import { c } from './c.js'; c.str += '1';");
 		TestLoader localLoader = new TestLoader(modules);
 		testResult("/main.js", "original11", resolver, localLoader);
+		// a.js and b.js share a parsed module
+		testResult("/main.js", "original11", resolver, new ModuleCachingLoader(localLoader));
 	}
 
 	@Test
@@ -328,6 +367,7 @@ public class BundlerTest extends TestCase {
 
 		TestLoader localLoader = new TestLoader(modules);
 		testResult("/a.js", 5.0, resolver, localLoader);
+		testResult("/a.js", 5.0, resolver, new ModuleCachingLoader(localLoader));
 	}
 
 	@Test
@@ -415,6 +455,376 @@ public class BundlerTest extends TestCase {
 		assertEquals(ImmutableList.of("/root/normalizing/js1.js", "/root/normalizing/js2.js"), dependentPaths);
 	}
 
+	public void testLoadDependenciesConcurrently() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			BundlerOptions concurrentOptions = BundlerOptions.SPEC_OPTIONS.withExecutor(executor);
+			for (String entry : Arrays.asList("/root/lib1/js9.js", "/root/lib1/js13.js", "/root/is_even.js", "/root/importExportAllFrom.js", "/root/loadJson.esm")) {
+				Path path = Paths.get(entry);
+				Module module = Parser.parseModule(loader.loadResource(path));
+				Map<String, Module> sequential = Bundler.loadDependencies(BundlerOptions.SPEC_OPTIONS, module, path, resolver, loader);
+				Map<String, Module> concurrent = Bundler.loadDependencies(concurrentOptions, module, path, resolver, loader);
+				assertEquals(new ArrayList<>(sequential.keySet()), new ArrayList<>(concurrent.keySet()));
+				assertEquals(sequential, concurrent);
+
+				String expected = TestUtils.toString(TestUtils.bundlePierced(BundlerOptions.SPEC_OPTIONS, entry, resolver, loader));
+				assertEquals(expected, TestUtils.toString(TestUtils.bundlePierced(concurrentOptions, entry, resolver, loader)));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testLoadDependenciesConcurrentlyFailure() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Path path = Paths.get("/root/missing.js");
+			Module module = Parser.parseModule("import './a.js'; import './b.js';");
+			Map<String, String> modules = new HashMap<>();
+			modules.put("/root/a.js", "import './c.js';");
+			modules.put("/root/b.js", "import { x } from");
+			Bundler.loadDependencies(BundlerOptions.SPEC_OPTIONS.withExecutor(executor), module, path, resolver, new TestLoader(modules));
+			fail("expected a ModuleLoaderException");
+		} catch (ModuleLoaderException e) {
+			assertTrue(e.getMessage().contains("/root/b.js"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testResolveCollisionsConcurrently() throws Exception {
+		TestLoader moduleLoader = TestUtils.fanOutLoader(20, i -> "var x = " + i + "; function g() { return x; } export function f() { return g() + x; }");
+		String expected = TestUtils.toString(TestUtils.bundlePierced(BundlerOptions.SPEC_OPTIONS, "/root/entry.js", resolver, moduleLoader));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int i = 0; i < 5; ++i) {
+				assertEquals(expected, TestUtils.toString(TestUtils.bundlePierced(BundlerOptions.SPEC_OPTIONS.withExecutor(executor), "/root/entry.js", resolver, moduleLoader)));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testCombineModulesConcurrentlyFailure() throws Exception {
+		Map<String, String> modules = new HashMap<>();
+		modules.put("/root/entry.js", "import { a } from './a.js'; import { b } from './b.js'; import { c } from './c.js';");
+		modules.put("/root/a.js", "export var a = 1;");
+		modules.put("/root/b.js", "import { a } from './a.js'; a = 2; export var b = 2;");
+		modules.put("/root/c.js", "import { b } from './b.js'; b = 3; export var c = 3;");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			TestUtils.bundlePierced(BundlerOptions.SPEC_OPTIONS.withThrowOnImportAssignment(true).withExecutor(executor), "/root/entry.js", resolver, new TestLoader(modules));
+			fail("expected a ModuleLoaderException");
+		} catch (ModuleLoaderException e) {
+			// the first module in schedule order fails, as it would sequentially
+			assertEquals("Illegal assignment to import: a", e.getCause().getMessage());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testBundleAll() throws Exception {
+		List<String> entries = Arrays.asList("/root/lib1/js9.js", "/root/lib1/js10.js", "/root/lib1/js13.js", "/root/lib1/js9.js", "/root/is_even.js", "/root/importExportAllFrom.js");
+		List<Path> paths = entries.stream().map(Paths::get).collect(Collectors.toList());
+		List<String> expectedPierced = new ArrayList<>();
+		List<String> expectedStandard = new ArrayList<>();
+		long separateAnalyses = 0;
+		for (String entry : entries) {
+			ScopeAnalysisCache analyses = new ScopeAnalysisCache();
+			expectedPierced.add(TestUtils.toString(Bundler.bundle(BundlerOptions.SPEC_OPTIONS, Paths.get(entry), resolver, loader, new PiercedModuleBundler(analyses))));
+			separateAnalyses += analyses.getMissCount();
+			expectedStandard.add(TestUtils.toString(TestUtils.bundleStandard(BundlerOptions.SPEC_OPTIONS, entry, resolver, loader)));
+		}
+
+		ScopeAnalysisCache analyses = new ScopeAnalysisCache();
+		List<Script> bundles = Bundler.bundleAll(BundlerOptions.SPEC_OPTIONS, paths, resolver, loader, new PiercedModuleBundler(analyses));
+		assertEquals(expectedPierced, bundles.stream().map(TestUtils::toString).collect(Collectors.toList()));
+		// js9 imports js10 and its dependencies, which are analysed once; so is js9, which is listed twice
+		assertTrue(analyses.getMissCount() < separateAnalyses);
+		assertEquals(expectedStandard, Bundler.bundleAll(BundlerOptions.SPEC_OPTIONS, paths, resolver, loader, new StandardModuleBundler()).stream().map(TestUtils::toString).collect(Collectors.toList()));
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			bundles = Bundler.bundleAll(BundlerOptions.SPEC_OPTIONS.withExecutor(executor), paths, resolver, loader, new PiercedModuleBundler());
+			assertEquals(expectedPierced, bundles.stream().map(TestUtils::toString).collect(Collectors.toList()));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testBundleChunked() throws Exception {
+		List<String> entries = Arrays.asList("/root/lib1/js9.js", "/root/lib1/js10.js", "/root/lib1/js6.js", "/root/is_even.js");
+		ChunkedBundle bundle = Bundler.bundleChunked(BundlerOptions.SPEC_OPTIONS, entries.stream().map(Paths::get).collect(Collectors.toList()), resolver, loader, new ChunkingModuleBundler());
+		// js10 and its dependencies are shared by the first two entry points
+		assertEquals(Collections.singletonList("shared-0-1"), new ArrayList<>(bundle.chunks.keySet()));
+		assertEquals(Collections.singletonList("shared-0-1"), bundle.entryChunks.get("/root/lib1/js9.js"));
+		assertEquals(Collections.emptyList(), bundle.entryChunks.get("/root/lib1/js6.js"));
+
+		for (String entry : entries) {
+			StringBuilder program = new StringBuilder();
+			for (String chunk : bundle.entryChunks.get(entry)) {
+				program.append(TestUtils.toString(bundle.chunks.get(chunk))).append("\n");
+			}
+			program.append(TestUtils.toString(bundle.entries.get(entry)));
+			Object expected = getResultFromGraal(TestUtils.toString(TestUtils.bundleStandard(BundlerOptions.SPEC_OPTIONS, entry, resolver, loader)));
+			assertEquals(expected, getResultFromGraal(program.toString()));
+		}
+	}
+
+	public void testMetrics() throws Exception {
+		BundleMetrics metrics = new BundleMetrics();
+		Script script = Bundler.bundle(BundlerOptions.SPEC_OPTIONS.withMetrics(metrics), Paths.get("/root/lib1/js9.js"), resolver, loader, new PiercedModuleBundler());
+		assertEquals(TestUtils.toString(Bundler.bundle(BundlerOptions.SPEC_OPTIONS, Paths.get("/root/lib1/js9.js"), resolver, loader, new PiercedModuleBundler())), TestUtils.toString(script));
+
+		Map<String, BundleMetrics.Record> totals = metrics.getPhaseTotals();
+		assertEquals(Arrays.asList("parse", "load", "resolveImports", "bundle", "resolveCollisions", "analyzeScope", "combineModules", "removeAllUnusedDeclarations"), new ArrayList<>(totals.keySet()));
+		List<String> parsed = metrics.getRecords().stream().filter(record -> record.phase.equals("parse")).map(record -> record.module.fromJust()).collect(Collectors.toList());
+		assertEquals(Arrays.asList("/root/lib1/js9.js", "/root/lib1/js10.js", "/root/lib1/js11.js", "/root/lib1/js12.js"), parsed);
+		for (BundleMetrics.Record record : metrics.getRecords()) {
+			assertTrue(record.wallNanos >= 0);
+		}
+		assertTrue(totals.get("bundle").wallNanos >= totals.get("combineModules").wallNanos);
+		assertTrue(metrics.report(3).contains("/root/lib1/"));
+
+		// recording metrics does not change how load failures are reported
+		IResourceLoader failing = new IResourceLoader() {
+			@Nonnull
+			@Override
+			public Boolean exists(@Nonnull Path path) {
+				return loader.exists(path);
+			}
+
+			@Nonnull
+			@Override
+			public String loadResource(@Nonnull Path path) throws IOException {
+				if (path.toString().equals("/root/lib1/js12.js")) {
+					throw new IllegalStateException("failed");
+				}
+				return loader.loadResource(path);
+			}
+		};
+		for (BundlerOptions options : Arrays.asList(BundlerOptions.SPEC_OPTIONS, BundlerOptions.SPEC_OPTIONS.withMetrics(new BundleMetrics()))) {
+			try {
+				Bundler.bundle(options, Paths.get("/root/lib1/js9.js"), resolver, failing, new PiercedModuleBundler());
+				fail("expected a ModuleLoaderException");
+			} catch (ModuleLoaderException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("module /root/lib1/js9.js cannot be loaded"));
+			}
+		}
+	}
+
+	@Test
+	public void testLowMemory() throws Exception {
+		GraphGenerator graph = new GraphGenerator(200).withSeed(5);
+		for (BundlerOptions options : Arrays.asList(BundlerOptions.SPEC_OPTIONS, BundlerOptions.NODE_OPTIONS, BundlerOptions.SPEC_OPTIONS.withDangerLevel(BundlerOptions.DangerLevel.DANGEROUS))) {
+			for (IModuleBundler bundler : Arrays.asList(new PiercedModuleBundler(), new StandardModuleBundler())) {
+				String expected = TestUtils.toString(Bundler.bundle(options, GraphGenerator.ENTRY, resolver, graph.loader(), bundler));
+				assertEquals(expected, TestUtils.toString(Bundler.bundle(options.withLowMemory(true), GraphGenerator.ENTRY, resolver, graph.loader(), bundler)));
+				for (String entry : Arrays.asList("/root/lib1/js9.js", "/root/is_even.js", "/root/importExportAllFrom.js", "/root/loadJson.esm")) {
+					expected = TestUtils.toString(Bundler.bundle(options, Paths.get(entry), resolver, loader, bundler));
+					assertEquals(expected, TestUtils.toString(Bundler.bundle(options.withLowMemory(true), Paths.get(entry), resolver, loader, bundler)));
+				}
+			}
+		}
+
+		// the map given to the bundler is left as it was, even when it cannot be modified
+		BundlerOptions options = BundlerOptions.SPEC_OPTIONS.withLowMemory(true);
+		Path path = Paths.get("/root/earlyError.js");
+		Map<String, Module> modules = Collections.unmodifiableMap(Bundler.loadDependencies(options, Parser.parseModule("import { result } from './lib1/js9.js'; a: a: ;"), path, resolver, loader));
+		int size = modules.size();
+		for (IModuleBundler bundler : Arrays.asList(new PiercedModuleBundler(), new StandardModuleBundler())) {
+			assertEquals(1, bundler.bundleEntrypointWithEarlyErrors(options, path.toString(), modules).right.length);
+			assertEquals(size, modules.size());
+		}
+
+		List<Path> entries = Arrays.asList(Paths.get("/root/lib1/js9.js"), Paths.get("/root/lib1/js13.js"));
+		assertEquals(Bundler.bundleAll(BundlerOptions.SPEC_OPTIONS, entries, resolver, loader, new PiercedModuleBundler()).stream().map(TestUtils::toString).collect(Collectors.toList()),
+			Bundler.bundleAll(options, entries, resolver, loader, new PiercedModuleBundler()).stream().map(TestUtils::toString).collect(Collectors.toList()));
+	}
+
+	public void testEarlyErrorCache() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			EarlyErrorCache cache = new EarlyErrorCache();
+			String source = "import { result } from './lib1/js9.js'; import { result as even } from './is_even.js'; a: a: ;";
+			Path path = Paths.get("/root/earlyError.js");
+			for (IModuleBundler bundler : Arrays.asList(new PiercedModuleBundler(), new StandardModuleBundler())) {
+				Pair<Script, ImmutableList<EarlyError>> expected = Bundler.bundleStringWithEarlyErrors(BundlerOptions.SPEC_OPTIONS, source, path, resolver, loader, bundler);
+				assertEquals(1, expected.right.length);
+				for (BundlerOptions options : Arrays.asList(BundlerOptions.SPEC_OPTIONS.withExecutor(executor), BundlerOptions.SPEC_OPTIONS.withEarlyErrorCache(cache), BundlerOptions.SPEC_OPTIONS.withEarlyErrorCache(cache).withExecutor(executor))) {
+					Pair<Script, ImmutableList<EarlyError>> actual = Bundler.bundleStringWithEarlyErrors(options, source, path, resolver, loader, bundler);
+					assertEquals(TestUtils.toString(expected.left), TestUtils.toString(actual.left));
+					assertEquals(expected.right.map(e -> e.message), actual.right.map(e -> e.message));
+				}
+			}
+
+			// every module is validated once, however often it is loaded
+			int modules = cache.size();
+			assertEquals(modules, cache.getMissCount());
+			assertEquals(modules * 3, cache.getHitCount());
+			cache.clear();
+			assertEquals(0, cache.size());
+		} finally {
+			executor.shutdown();
+		}
+
+		// errors found again refer to the nodes of the module being validated
+		String source = "a: a: ; label: { label: ; }";
+		EarlyErrorCache cache = new EarlyErrorCache();
+		cache.validate("/root/a.js", source, Parser.parseModule(source));
+		Module module = Parser.parseModule(source);
+		ImmutableList<EarlyError> expected = EarlyErrorChecker.validate(module);
+		ImmutableList<EarlyError> actual = cache.validate("/root/a.js", source, module);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, actual.length);
+		assertEquals(expected.map(e -> e.message), actual.map(e -> e.message));
+		assertTrue(expected.zipWith((e, a) -> e.node == a.node, actual).foldLeft((x, y) -> x && y, true));
+
+		// the same source at another path is another module
+		cache.validate("/root/b.js", source, module);
+		assertEquals(2, cache.getMissCount());
+
+		// a bounded cache evicts the least recently used modules
+		EarlyErrorCache bounded = new EarlyErrorCache(1000);
+		for (int i = 0; i < 20; ++i) {
+			String numbered = "export var x" + i + " = " + i + ";";
+			bounded.validate("/root/m" + i + ".js", numbered, Parser.parseModule(numbered));
+		}
+		assertTrue(bounded.getEvictionCount() > 0);
+		assertTrue(bounded.getSizeInBytes() <= 1000);
+		bounded.validate("/root/m19.js", "export var x19 = 19;", Parser.parseModule("export var x19 = 19;"));
+		assertEquals(1, bounded.getHitCount());
+	}
+
+	public void testLimits() throws Exception {
+		CancellationToken cancelled = new CancellationToken();
+		cancelled.cancel();
+		GraphGenerator graph = new GraphGenerator(60).withSeed(2);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			for (BundlerOptions options : Arrays.asList(BundlerOptions.SPEC_OPTIONS, BundlerOptions.SPEC_OPTIONS.withExecutor(executor))) {
+				for (IModuleBundler bundler : Arrays.asList(new PiercedModuleBundler(), new StandardModuleBundler())) {
+					BundleLimits generous = BundleLimits.NONE.withMaxModules(60).withMaxSourceBytes(1 << 20).withDeadline(Instant.now().plusSeconds(600)).withCancellationToken(new CancellationToken());
+					assertEquals(TestUtils.toString(Bundler.bundle(options, GraphGenerator.ENTRY, resolver, graph.loader(), bundler)),
+						TestUtils.toString(Bundler.bundle(options.withLimits(generous), GraphGenerator.ENTRY, resolver, graph.loader(), bundler)));
+					assertEquals(BundleLimitException.Reason.TOO_MANY_MODULES, stoppedBy(options.withLimits(BundleLimits.NONE.withMaxModules(59)), GraphGenerator.ENTRY, graph.loader(), bundler));
+					assertEquals(BundleLimitException.Reason.TOO_MUCH_SOURCE, stoppedBy(options.withLimits(BundleLimits.NONE.withMaxSourceBytes(1000)), GraphGenerator.ENTRY, graph.loader(), bundler));
+					assertEquals(BundleLimitException.Reason.DEADLINE_EXCEEDED, stoppedBy(options.withLimits(BundleLimits.NONE.withDeadline(Instant.now().minusSeconds(1))), GraphGenerator.ENTRY, graph.loader(), bundler));
+					assertEquals(BundleLimitException.Reason.CANCELLED, stoppedBy(options.withLimits(BundleLimits.NONE.withCancellationToken(cancelled)), GraphGenerator.ENTRY, graph.loader(), bundler));
+				}
+			}
+
+			// bundling stops at the next module once cancelled
+			CancellationToken token = new CancellationToken();
+			AtomicInteger loads = new AtomicInteger();
+			IResourceLoader graphLoader = graph.loader();
+			IResourceLoader cancelling = new IResourceLoader() {
+				@Nonnull
+				@Override
+				public Boolean exists(@Nonnull Path path) {
+					return graphLoader.exists(path);
+				}
+
+				@Nonnull
+				@Override
+				public String loadResource(@Nonnull Path path) throws IOException {
+					if (loads.incrementAndGet() == 10) {
+						token.cancel();
+					}
+					return graphLoader.loadResource(path);
+				}
+			};
+			assertEquals(BundleLimitException.Reason.CANCELLED, stoppedBy(BundlerOptions.SPEC_OPTIONS.withLimits(BundleLimits.NONE.withCancellationToken(token)), GraphGenerator.ENTRY, cancelling, new PiercedModuleBundler()));
+			assertEquals(10, loads.get());
+
+			// nothing is loaded once the bundle is stopped, not even the entry point
+			loads.set(0);
+			assertEquals(BundleLimitException.Reason.CANCELLED, stoppedBy(BundlerOptions.SPEC_OPTIONS.withLimits(BundleLimits.NONE.withCancellationToken(token)), GraphGenerator.ENTRY, cancelling, new PiercedModuleBundler()));
+			assertEquals(0, loads.get());
+
+			// source is counted in UTF-8, the entry point's included
+			Map<String, String> modules = new HashMap<>();
+			modules.put("/root/entry.js", "import { s } from './unicode.js'; import json from './data.json'; export var result = s + json.t;");
+			modules.put("/root/unicode.js", "export var s = '\u00e9\u20ac\ud83d\ude00';");
+			modules.put("/root/data.json", "{ \"t\": \"\u00e9\" }");
+			long bytes = modules.values().stream().mapToLong(source -> source.getBytes(StandardCharsets.UTF_8).length).sum();
+			TestLoader unicodeLoader = new TestLoader(modules);
+			Bundler.bundle(BundlerOptions.SPEC_OPTIONS.withLimits(BundleLimits.NONE.withMaxSourceBytes(bytes)), Paths.get("/root/entry.js"), resolver, unicodeLoader, new PiercedModuleBundler());
+			assertEquals(BundleLimitException.Reason.TOO_MUCH_SOURCE, stoppedBy(BundlerOptions.SPEC_OPTIONS.withLimits(BundleLimits.NONE.withMaxSourceBytes(bytes - 1)), Paths.get("/root/entry.js"), unicodeLoader, new PiercedModuleBundler()));
+
+			// the exception is never wrapped, whichever way the bundle is made
+			BundlerOptions stopped = BundlerOptions.SPEC_OPTIONS.withExecutor(executor).withLimits(BundleLimits.NONE.withCancellationToken(cancelled));
+			try {
+				Bundler.bundleAll(stopped, Arrays.asList(Paths.get("/root/lib1/js9.js"), Paths.get("/root/is_even.js")), resolver, loader, new PiercedModuleBundler());
+				fail("expected a BundleLimitException");
+			} catch (BundleLimitException e) {
+				assertEquals(BundleLimitException.Reason.CANCELLED, e.reason);
+			}
+			Map<String, Map<String, Module>> entries = new HashMap<>();
+			for (String entry : Arrays.asList("/root/lib1/js9.js", "/root/is_even.js")) {
+				entries.put(entry, Bundler.loadDependencies(loader.loadModule(Paths.get(entry)), Paths.get(entry), resolver, loader));
+			}
+			try {
+				new PiercedModuleBundler().bundleEntrypoints(stopped, entries);
+				fail("expected a BundleLimitException");
+			} catch (BundleLimitException e) {
+				assertEquals(BundleLimitException.Reason.CANCELLED, e.reason);
+			}
+			try {
+				new ChunkingModuleBundler().bundleEntrypoints(stopped, entries);
+				fail("expected a BundleLimitException");
+			} catch (BundleLimitException e) {
+				assertEquals(BundleLimitException.Reason.CANCELLED, e.reason);
+			}
+			BundlerOptions overdue = BundlerOptions.SPEC_OPTIONS.withLimits(BundleLimits.NONE.withDeadline(Instant.now().minusSeconds(1)));
+			try {
+				Bundler.bundleChunked(overdue, Arrays.asList(Paths.get("/root/lib1/js9.js"), Paths.get("/root/is_even.js")), resolver, loader, new ChunkingModuleBundler());
+				fail("expected a BundleLimitException");
+			} catch (BundleLimitException e) {
+				assertEquals(BundleLimitException.Reason.DEADLINE_EXCEEDED, e.reason);
+			}
+			try {
+				new BundleSession(stopped, Paths.get("/root/lib1/js9.js"), resolver, loader, new StandardModuleBundler()).bundle();
+				fail("expected a BundleLimitException");
+			} catch (BundleLimitException e) {
+				assertEquals("/root/lib1/js9.js", e.module);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testFrequencyRankedNames() throws Exception {
+		// every module declares a rarely used and an often used variable, all but one of each renamed
+		StringBuilder uses = new StringBuilder();
+		for (int j = 0; j < 20; ++j) {
+			uses.append(" zulu.v = zulu.v + ").append(j).append(';');
+		}
+		TestLoader moduleLoader = TestUtils.fanOutLoader(60, i -> "var alpha = " + i + "; var zulu = { v: alpha };" + uses + " export function f() { return zulu.v; }");
+		String plain = TestUtils.toString(TestUtils.bundlePierced(BundlerOptions.SPEC_OPTIONS, "/root/entry.js", resolver, moduleLoader));
+		String ranked = TestUtils.toString(TestUtils.bundlePierced(BundlerOptions.SPEC_OPTIONS.withFrequencyRankedNames(true), "/root/entry.js", resolver, moduleLoader));
+		assertTrue(ranked.length() < plain.length());
+		assertEquals(getResultFromGraal(plain), getResultFromGraal(ranked));
+		assertEquals(ranked, TestUtils.toString(TestUtils.bundlePierced(BundlerOptions.SPEC_OPTIONS.withFrequencyRankedNames(true), "/root/entry.js", resolver, moduleLoader)));
+
+		// and the fixtures behave the same
+		for (String path : Arrays.asList("/root/lib1/js9.js", "/root/is_even.js", "/root/importExportAllFrom.js", "/root/renaming.js")) {
+			testResultPierced(BundlerOptions.SPEC_OPTIONS.withFrequencyRankedNames(true), path, TestUtils.runInGraal(BundlerOptions.SPEC_OPTIONS, path, resolver, loader, true), resolver, loader);
+		}
+
+		// the bundlers that rename nothing reject the option rather than ignore it
+		try {
+			new StandardModuleBundler().bundleEntrypoint(BundlerOptions.SPEC_OPTIONS.withFrequencyRankedNames(true), "/root/entry.js", Collections.emptyMap());
+			fail("expected an IllegalArgumentException");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			new ChunkingModuleBundler().bundleEntrypoints(BundlerOptions.SPEC_OPTIONS.withFrequencyRankedNames(true), Collections.emptyMap());
+			fail("expected an IllegalArgumentException");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
 	public void testNoFreezing() throws Exception {
 		Path path = Paths.get("/root/lib1/js1.js");
 		String source = loader.loadResource(path);
@@ -0,0 +1,265 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.loader.FallbackLoader;
+import com.shapesecurity.bandolier.es2018.loader.IResourceLoader;
+import com.shapesecurity.bandolier.es2018.loader.MapLoader;
+import com.shapesecurity.bandolier.es2018.loader.MapModulesLoader;
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.parser.JsError;
+import com.shapesecurity.shift.es2018.parser.Parser;
+
+import javax.annotation.Nonnull;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic module graphs of any size for scale and stress testing. The same settings always generate the
+ * same graph.
+ *
+ * Modules are laid out in layers below the entry point, {@code /graph/m0.js}, along a spanning tree so that every
+ * module is reachable. Each module imports its children in the tree and then random modules of the next layer, up to
+ * {@code fanOut} imports, and imports the named export {@code v<i>} of every JavaScript module it imports. The entry
+ * point exports the sum of these as {@code result}.
+ *
+ * ImportExportConnector checks for cycles along every import path, so graphs where modules have many more imports
+ * than children in the tree (a large fan-out with a large depth) take exponential time to bundle.
+ */
+final class GraphGenerator {
+
+	@Nonnull
+	static final Path ENTRY = Paths.get("/graph/m0.js");
+
+	private final int size;
+	private final int fanOut;
+	// 0 to derive the depth from the fan-out
+	private final int depth;
+	private final double cycleRate;
+	private final double exportStarRate;
+	private final double collisionRate;
+	private final double jsonRate;
+	private final long seed;
+
+	/**
+	 * @param size the number of modules, including the entry point
+	 */
+	GraphGenerator(int size) {
+		this(size, 3, 0, 0.1, 0.2, 0.5, 0.1, 0);
+	}
+
+	private GraphGenerator(int size, int fanOut, int depth, double cycleRate, double exportStarRate, double collisionRate, double jsonRate, long seed) {
+		if (size < 1 || fanOut < 1 || depth < 0 || depth == 1 && size > 1) {
+			throw new IllegalArgumentException("No graph of " + size + " modules with a fan-out of " + fanOut + " and a depth of " + depth);
+		}
+		this.size = size;
+		this.fanOut = fanOut;
+		this.depth = depth;
+		this.cycleRate = cycleRate;
+		this.exportStarRate = exportStarRate;
+		this.collisionRate = collisionRate;
+		this.jsonRate = jsonRate;
+		this.seed = seed;
+	}
+
+	// the number of imports of each module outside the last layer, where the next layer has that many modules
+	@Nonnull
+	GraphGenerator withFanOut(int fanOut) {
+		return new GraphGenerator(this.size, fanOut, this.depth, this.cycleRate, this.exportStarRate, this.collisionRate, this.jsonRate, this.seed);
+	}
+
+	// the number of layers including the entry point; by default, as few as the spanning tree allows with fanOut children per module
+	@Nonnull
+	GraphGenerator withDepth(int depth) {
+		return new GraphGenerator(this.size, this.fanOut, depth, this.cycleRate, this.exportStarRate, this.collisionRate, this.jsonRate, this.seed);
+	}
+
+	// the chance that a module also imports one of its ancestors, closing a cycle
+	@Nonnull
+	GraphGenerator withCycleRate(double cycleRate) {
+		return new GraphGenerator(this.size, this.fanOut, this.depth, cycleRate, this.exportStarRate, this.collisionRate, this.jsonRate, this.seed);
+	}
+
+	// the chance that a module re-exports its first child with export *, which chains along the tree
+	@Nonnull
+	GraphGenerator withExportStarRate(double exportStarRate) {
+		return new GraphGenerator(this.size, this.fanOut, this.depth, this.cycleRate, exportStarRate, this.collisionRate, this.jsonRate, this.seed);
+	}
+
+	// the chance that a module declares the same top-level names as other modules rather than names of its own
+	@Nonnull
+	GraphGenerator withCollisionRate(double collisionRate) {
+		return new GraphGenerator(this.size, this.fanOut, this.depth, this.cycleRate, this.exportStarRate, collisionRate, this.jsonRate, this.seed);
+	}
+
+	// the chance that a module without children is a JSON module
+	@Nonnull
+	GraphGenerator withJsonRate(double jsonRate) {
+		return new GraphGenerator(this.size, this.fanOut, this.depth, this.cycleRate, this.exportStarRate, this.collisionRate, jsonRate, this.seed);
+	}
+
+	@Nonnull
+	GraphGenerator withSeed(long seed) {
+		return new GraphGenerator(this.size, this.fanOut, this.depth, this.cycleRate, this.exportStarRate, this.collisionRate, this.jsonRate, seed);
+	}
+
+	// the number of children of each module in the spanning tree, the smallest that fits every module into the depth
+	private int branching() {
+		if (this.depth == 0) {
+			return this.fanOut;
+		}
+		for (int branching = 1; ; ++branching) {
+			long capacity = 0;
+			long width = 1;
+			for (int layer = 0; layer < this.depth && capacity < this.size; ++layer) {
+				capacity += width;
+				width *= branching;
+			}
+			if (capacity >= this.size) {
+				return branching;
+			}
+		}
+	}
+
+	/**
+	 * @return the source of every module, by path
+	 */
+	@Nonnull
+	Map<Path, String> sources() {
+		Random random = new Random(this.seed);
+		int branching = this.branching();
+
+		// the modules of the spanning tree in breadth-first order, so that the parent of module i is (i - 1) / branching
+		int[] parent = new int[this.size];
+		int[] layer = new int[this.size];
+		List<List<Integer>> layers = new ArrayList<>();
+		for (int i = 0; i < this.size; ++i) {
+			parent[i] = i == 0 ? -1 : (i - 1) / branching;
+			layer[i] = i == 0 ? 0 : layer[parent[i]] + 1;
+			if (layers.size() == layer[i]) {
+				layers.add(new ArrayList<>());
+			}
+			layers.get(layer[i]).add(i);
+		}
+
+		List<Set<Integer>> imports = new ArrayList<>();
+		boolean[] json = new boolean[this.size];
+		for (int i = 0; i < this.size; ++i) {
+			Set<Integer> children = new LinkedHashSet<>();
+			for (int child = i * branching + 1; child <= i * branching + branching && child < this.size; ++child) {
+				children.add(child);
+			}
+			imports.add(children);
+			json[i] = i > 0 && children.isEmpty() && random.nextDouble() < this.jsonRate;
+		}
+
+		Map<Path, String> sources = new LinkedHashMap<>();
+		int[] exportStar = new int[this.size];
+		// visited deepest first, so that the export * of every import is known
+		for (int i = this.size - 1; i >= 0; --i) {
+			exportStar[i] = -1;
+			if (json[i]) {
+				sources.put(path(i, true), "{ \"value\": " + i + " }");
+				continue;
+			}
+			Set<Integer> imported = imports.get(i);
+			if (layer[i] + 1 < layers.size()) {
+				List<Integer> next = layers.get(layer[i] + 1);
+				int wanted = Math.min(this.fanOut, next.size());
+				while (imported.size() < wanted) {
+					imported.add(next.get(random.nextInt(next.size())));
+				}
+			}
+			int back = i > 0 && random.nextDouble() < this.cycleRate ? ancestor(parent, i, random) : -1;
+			boolean collides = random.nextDouble() < this.collisionRate;
+			if (!imports.get(i).isEmpty() && random.nextDouble() < this.exportStarRate) {
+				int first = imports.get(i).iterator().next();
+				if (!json[first]) {
+					exportStar[i] = first;
+				}
+			}
+
+			StringBuilder source = new StringBuilder();
+			Set<String> values = new LinkedHashSet<>();
+			for (int dependency : imported) {
+				if (json[dependency]) {
+					source.append("import json").append(dependency).append(" from '").append(specifier(dependency, true)).append("';\n");
+					values.add("json" + dependency + ".value");
+				} else {
+					source.append("import { v").append(dependency);
+					values.add("v" + dependency);
+					// a name that the dependency only re-exports, unless another import already brings it in
+					if (exportStar[dependency] >= 0 && !values.contains("v" + exportStar[dependency])) {
+						source.append(", v").append(exportStar[dependency]);
+						values.add("v" + exportStar[dependency]);
+					}
+					source.append(" } from '").append(specifier(dependency, false)).append("';\n");
+				}
+			}
+			if (back >= 0) {
+				source.append("import { v").append(back).append(" as back } from '").append(specifier(back, false)).append("';\n");
+			}
+			if (exportStar[i] >= 0) {
+				source.append("export * from '").append(specifier(exportStar[i], false)).append("';\n");
+			}
+			String local = collides ? "local" : "local" + i;
+			String helper = collides ? "helper" : "helper" + i;
+			source.append("var ").append(local).append(" = ").append(i).append(";\n");
+			source.append("function ").append(helper).append("(x) { var tmp = x + ").append(local).append("; return tmp; }\n");
+			source.append("export var v").append(i).append(" = ").append(helper).append("(").append(values.isEmpty() ? "0" : String.join(" + ", values)).append(");\n");
+			if (back >= 0) {
+				// only read when called, since the ancestor may not have been evaluated yet
+				source.append("export function cycle").append(i).append("() { return back; }\n");
+			}
+			if (i == 0) {
+				source.append("export var result = v0;\n");
+			}
+			sources.put(path(i, false), source.toString());
+		}
+		return sources;
+	}
+
+	@Nonnull
+	IResourceLoader loader() {
+		return new MapLoader(this.sources());
+	}
+
+	// a loader with the JavaScript modules already parsed, to leave the cost of parsing out of measurements
+	@Nonnull
+	IResourceLoader preparsedLoader() throws JsError {
+		Map<Path, Module> modules = new HashMap<>();
+		Map<Path, String> json = new HashMap<>();
+		for (Map.Entry<Path, String> source : this.sources().entrySet()) {
+			if (source.getKey().toString().endsWith(".json")) {
+				json.put(source.getKey(), source.getValue());
+			} else {
+				modules.put(source.getKey(), Parser.parseModule(source.getValue()));
+			}
+		}
+		return new FallbackLoader(new MapModulesLoader(modules), new MapLoader(json));
+	}
+
+	private static int ancestor(@Nonnull int[] parent, int module, @Nonnull Random random) {
+		List<Integer> ancestors = new ArrayList<>();
+		for (int i = parent[module]; i >= 0; i = parent[i]) {
+			ancestors.add(i);
+		}
+		return ancestors.get(random.nextInt(ancestors.size()));
+	}
+
+	@Nonnull
+	private static Path path(int module, boolean json) {
+		return ENTRY.resolveSibling(specifier(module, json).substring(2));
+	}
+
+	@Nonnull
+	private static String specifier(int module, boolean json) {
+		return "./m" + module + (json ? ".json" : ".js");
+	}
+}
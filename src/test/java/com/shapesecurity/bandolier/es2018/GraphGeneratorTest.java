@@ -0,0 +1,74 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.loader.FileSystemResolver;
+import com.shapesecurity.bandolier.es2018.loader.IResourceLoader;
+import com.shapesecurity.shift.es2018.ast.Module;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GraphGeneratorTest {
+
+	private static String joined(Map<Path, String> sources) {
+		StringBuilder joined = new StringBuilder();
+		for (Map.Entry<Path, String> source : sources.entrySet()) {
+			joined.append(source.getKey()).append('\n').append(source.getValue());
+		}
+		return joined.toString();
+	}
+
+	private static int count(Map<Path, String> sources, String text) {
+		int count = 0;
+		for (String source : sources.values()) {
+			count += source.contains(text) ? 1 : 0;
+		}
+		return count;
+	}
+
+	@Test
+	public void testDeterminism() {
+		GraphGenerator generator = new GraphGenerator(200).withSeed(7);
+		assertEquals(joined(generator.sources()), joined(generator.sources()));
+		assertEquals(joined(generator.sources()), joined(new GraphGenerator(200).withSeed(7).sources()));
+		assertNotEquals(joined(generator.sources()), joined(generator.withSeed(8).sources()));
+	}
+
+	@Test
+	public void testShape() throws Exception {
+		GraphGenerator generator = new GraphGenerator(300).withFanOut(4).withDepth(6).withCycleRate(0.5).withExportStarRate(0.5).withJsonRate(0.5);
+		Map<Path, String> sources = generator.sources();
+		assertEquals(300, sources.size());
+		assertTrue(count(sources, "export * from") > 0);
+		assertTrue(count(sources, "as back") > 0);
+		assertTrue(count(sources, "import json") > 0);
+
+		// every module is reachable from the entry point
+		IResourceLoader loader = generator.loader();
+		Map<String, Module> loaded = Bundler.loadDependencies(loader.loadModule(GraphGenerator.ENTRY), GraphGenerator.ENTRY, new FileSystemResolver(), loader);
+		assertEquals(300, loaded.size());
+
+		Map<Path, String> unique = new GraphGenerator(300).withCollisionRate(0).sources();
+		assertFalse(joined(unique).contains("var local ="));
+		assertEquals(0, count(new GraphGenerator(300).withCycleRate(0).sources(), "as back"));
+	}
+
+	@Test
+	public void testBundling() throws Exception {
+		GraphGenerator generator = new GraphGenerator(150).withSeed(3);
+		Object expected = TestUtils.runInGraal(BundlerOptions.SPEC_OPTIONS, GraphGenerator.ENTRY.toString(), new FileSystemResolver(), generator.loader(), false);
+		TestUtils.testResult(GraphGenerator.ENTRY.toString(), expected, new FileSystemResolver(), generator.loader());
+		TestUtils.testResult(GraphGenerator.ENTRY.toString(), expected, new FileSystemResolver(), generator.preparsedLoader());
+
+		// without cycles, every module has been evaluated before its value is read
+		GraphGenerator acyclic = generator.withCycleRate(0);
+		Object result = TestUtils.runInGraal(BundlerOptions.SPEC_OPTIONS, GraphGenerator.ENTRY.toString(), new FileSystemResolver(), acyclic.loader(), true);
+		assertTrue(result instanceof Double && !((Double) result).isNaN());
+	}
+}
@@ -0,0 +1,53 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.loader.FileSystemResolver;
+import com.shapesecurity.functional.data.Maybe;
+import com.shapesecurity.shift.es2018.parser.Parser;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonModuleTest {
+
+	private static final String[] JSON = {
+		"{ \"value\": 1, \"otherValue\": 2 }",
+		"[1, -2.5, 1e3, -0, 1E-7, 12345678901234567890, 1e400, -1e400]",
+		"{ \"nested\": { \"array\": [[], {}, [null, true, false]] }, \"\": \"\", \"1\": \"one\", \"__proto__\": null }",
+		"\"\\u2028 \\\"quoted\\\" \\\\ \\n \\ud83d\\ude00 \\/\"",
+		"  42  ",
+		"null",
+	};
+
+	@Test
+	public void testSameAsParser() throws Exception {
+		for (String json : JSON) {
+			assertEquals(json, Parser.parseModule("export default (" + json + ");"), JsonModule.of(json, Maybe.empty()));
+		}
+		// not JSON, but JavaScript the parser accepts
+		for (String notJson : new String[]{ "{ value: 1, }", "[1, 2] /* comment */", "'single'", "0x10", "[,]" }) {
+			assertEquals(notJson, Parser.parseModule("export default (" + notJson + ");"), JsonModule.of(notJson, Maybe.empty()));
+		}
+	}
+
+	@Test
+	public void testJsonParse() throws Exception {
+		assertEquals(Parser.parseModule("export default JSON.parse('{\"a\":[1,-2.5e3,null],\"b\":\"\\\\\"x\\\\\"\"}');"), JsonModule.of("{ \"a\": [1, -2.5e3, null],\n \"b\": \"\\\"x\\\"\" }", Maybe.of(10)));
+		// shorter than the threshold
+		assertEquals(Parser.parseModule("export default ({ \"a\": 1 });"), JsonModule.of("{ \"a\": 1 }", Maybe.of(100)));
+
+		Map<String, String> modules = new HashMap<>();
+		modules.put("/root/big.json", "{ \"list\": [1, 2, 3], \"name\": \"big\" }");
+		modules.put("/root/main.js", "import big from './big.json'; var JSON = 'shadowed'; export var result = big.name + big.list.length + JSON;");
+		TestLoader loader = new TestLoader(modules);
+		for (boolean pierced : new boolean[]{ true, false }) {
+			assertEquals("big3shadowed", TestUtils.runInGraal(BundlerOptions.SPEC_OPTIONS, "/root/main.js", new FileSystemResolver(), loader, pierced));
+			assertEquals("big3shadowed", TestUtils.runInGraal(BundlerOptions.SPEC_OPTIONS.withJsonParseThreshold(0), "/root/main.js", new FileSystemResolver(), loader, pierced));
+		}
+		assertTrue(TestUtils.toString(TestUtils.bundlePierced(BundlerOptions.SPEC_OPTIONS.withJsonParseThreshold(0), "/root/main.js", new FileSystemResolver(), loader)).contains("JSON.parse("));
+	}
+}
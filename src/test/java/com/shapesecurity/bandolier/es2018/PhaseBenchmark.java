@@ -0,0 +1,74 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.loader.FileSystemResolver;
+import com.shapesecurity.bandolier.es2018.transformations.DeadCodeElimination;
+import com.shapesecurity.bandolier.es2018.transformations.ImportExportConnector;
+import com.shapesecurity.bandolier.es2018.transformations.ScopeAnalysisCache;
+import com.shapesecurity.bandolier.es2018.transformations.VariableCollisionResolver;
+import com.shapesecurity.functional.Pair;
+import com.shapesecurity.functional.data.HashTable;
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.ast.Script;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// the phases of PiercedModuleBundler on their own, each given the output of the phases before it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+
+	@Param({"fixtures", "generated-100", "generated-1000"})
+	public String graph;
+
+	private final BundlerOptions options = BundlerOptions.SPEC_OPTIONS;
+	private HashTable<String, ModuleWrapper> modules;
+	private VariableCollisionResolver.ResolvedResult resolved;
+	private HashTable<String, ModuleWrapper> specifierToModule;
+	private Script combined;
+
+	@Setup
+	public void setUp() throws Exception {
+		TestLoader loader = new TestLoader(BenchmarkGraphs.graph(this.graph));
+		Map<String, Module> loaded = Bundler.loadDependencies(this.options, loader.loadModule(Paths.get(BenchmarkGraphs.ENTRY)), Paths.get(BenchmarkGraphs.ENTRY), new FileSystemResolver(), loader);
+		this.modules = HashTable.emptyUsingEquality();
+		for (Map.Entry<String, Module> module : loaded.entrySet()) {
+			this.modules = this.modules.put(module.getKey(), new ModuleWrapper(module.getValue()));
+		}
+		this.resolved = this.resolveCollisions();
+		this.specifierToModule = this.modules.map(module -> this.resolved.moduleMap.get(module).fromJust());
+		this.combined = this.combineModules().left;
+	}
+
+	@Benchmark
+	public VariableCollisionResolver.ResolvedResult resolveCollisions() {
+		return VariableCollisionResolver.resolveCollisions(this.options, this.modules, new ScopeAnalysisCache());
+	}
+
+	@Benchmark
+	public Pair<Script, String> combineModules() {
+		return ImportExportConnector.combineModules(this.options, this.specifierToModule.get(BenchmarkGraphs.ENTRY).fromJust(), this.resolved, this.specifierToModule);
+	}
+
+	@Benchmark
+	public Script removeAllUnusedDeclarations() {
+		return DeadCodeElimination.removeAllUnusedDeclarations(this.combined);
+	}
+}
@@ -0,0 +1,79 @@
+package com.shapesecurity.bandolier.es2018;
+
+import com.shapesecurity.bandolier.es2018.bundlers.BundlerOptions;
+import com.shapesecurity.bandolier.es2018.bundlers.StandardModuleBundler;
+import com.shapesecurity.bandolier.es2018.loader.FileSystemResolver;
+import com.shapesecurity.functional.data.ImmutableList;
+import com.shapesecurity.functional.data.Maybe;
+import com.shapesecurity.shift.es2018.ast.CallExpression;
+import com.shapesecurity.shift.es2018.ast.ExpressionStatement;
+import com.shapesecurity.shift.es2018.ast.FormalParameters;
+import com.shapesecurity.shift.es2018.ast.FunctionBody;
+import com.shapesecurity.shift.es2018.ast.FunctionExpression;
+import com.shapesecurity.shift.es2018.ast.Program;
+import com.shapesecurity.shift.es2018.ast.Script;
+import com.shapesecurity.shift.es2018.codegen.CodeGen;
+import com.shapesecurity.shift.es2018.fuzzer.Fuzzer;
+import com.shapesecurity.shift.es2018.parser.Parser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamingCodeGenTest {
+
+	private static void assertSameCode(Script script) throws IOException {
+		for (boolean pretty : new boolean[]{ false, true }) {
+			StringWriter writer = new StringWriter();
+			StreamingCodeGen.codeGen(script, pretty, writer);
+			assertEquals(CodeGen.codeGen(script, pretty), writer.toString());
+		}
+	}
+
+	// the shape bundlers produce: (function(...){...}(...)) around the given statements
+	private static Script wrap(Script script) {
+		FunctionExpression function = new FunctionExpression(false, false, Maybe.empty(), new FormalParameters(ImmutableList.empty(), Maybe.empty()), new FunctionBody(script.directives, script.statements));
+		return new Script(ImmutableList.empty(), ImmutableList.of(new ExpressionStatement(new CallExpression(function, ImmutableList.empty()))));
+	}
+
+	@Test
+	public void testSameAsCodeGen() throws Exception {
+		assertSameCode(Parser.parseScript("'use strict'; ('not a directive'); (function(){ 'use strict'; ('x'); function f(){} }).call(this); (function(){ let x = 1; })();"));
+		assertSameCode(Parser.parseScript("(function(){ ('x'); })(); (function(){ ({}); })(); a = 1 - -1; b = 1..toString(); c = a-- > b"));
+		assertSameCode(wrap(Parser.parseScript("'x'; a <!--b")));
+	}
+
+	@Test
+	public void testSameAsCodeGenFuzzed() throws Exception {
+		Random random = new Random(0);
+		int scripts = 0;
+		while (scripts < 100) {
+			Program program = Fuzzer.generate(random, 6);
+			if (program instanceof Script) {
+				assertSameCode((Script) program);
+				assertSameCode(wrap((Script) program));
+				++scripts;
+			}
+		}
+	}
+
+	@Test
+	public void testStreamsBundles() throws Exception {
+		TestLoader loader = TestUtils.fanOutLoader(300, i -> "var x = '" + i + "'; export function f() { return x + 'a fairly long string to make the output larger'; }");
+		for (Script bundle : new Script[]{
+			TestUtils.bundlePierced(BundlerOptions.SPEC_OPTIONS, "/root/entry.js", new FileSystemResolver(), loader),
+			Bundler.bundle(BundlerOptions.SPEC_OPTIONS, Paths.get("/root/entry.js"), new FileSystemResolver(), loader, new StandardModuleBundler())
+		}) {
+			assertSameCode(bundle);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			StreamingCodeGen.codeGen(bundle, false, out);
+			assertEquals(CodeGen.codeGen(bundle), new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}
+	}
+}
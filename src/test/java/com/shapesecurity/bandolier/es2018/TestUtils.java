@@ -12,6 +12,9 @@ import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Value;
 
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
 
 import static org.junit.Assert.assertEquals;
 
@@ -62,6 +65,23 @@ public class TestUtils {
         }
     }
 
+    /**
+     * A loader of /root/entry.js, which imports f from each of the modules /root/m0.js to /root/m{count - 1}.js and
+     * exports the sum of their results as result.
+     * @param count the number of modules
+     * @param module the source of each module, given its number; it must export f
+     */
+    static TestLoader fanOutLoader(int count, IntFunction<String> module) {
+        Map<String, String> modules = new HashMap<>();
+        StringBuilder entry = new StringBuilder("var result = 0;");
+        for (int i = 0; i < count; ++i) {
+            entry.append(" import { f as f").append(i).append(" } from './m").append(i).append(".js'; result += f").append(i).append("();");
+            modules.put("/root/m" + i + ".js", module.apply(i));
+        }
+        modules.put("/root/entry.js", entry.append(" export { result };").toString());
+        return new TestLoader(modules);
+    }
+
     static Script bundlePierced(BundlerOptions options, String filePath, IResolver resolver, IResourceLoader loader) throws ModuleLoaderException {
         return Bundler.bundle(options, Paths.get(filePath), resolver, loader, new PiercedModuleBundler());
     }
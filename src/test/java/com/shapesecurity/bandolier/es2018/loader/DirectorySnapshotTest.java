@@ -0,0 +1,65 @@
+package com.shapesecurity.bandolier.es2018.loader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class DirectorySnapshotTest {
+    private static final Path FIXTURES_DIR = Paths.get("src/test/resources/fixtures").toAbsolutePath();
+
+    @Test
+    public void testMatchesFileSystem() throws Throwable {
+        DirectorySnapshot snapshot = new DirectorySnapshot();
+        RootedFileLoader loader = new RootedFileLoader(FIXTURES_DIR, new ResourceCache(), snapshot);
+        Assert.assertTrue(loader.exists(Paths.get("/a")));
+        Assert.assertEquals("a", loader.loadResource(Paths.get("/a")));
+        Assert.assertTrue(loader.exists(Paths.get("/c/d")));
+        Assert.assertTrue(loader.exists(Paths.get("/c/e/f")));
+        Assert.assertTrue(loader.exists(Paths.get("/c/e/../d")));
+
+        Assert.assertFalse(loader.exists(Paths.get("/z")));
+        Assert.assertFalse(loader.exists(Paths.get("/c")));
+        Assert.assertFalse(loader.exists(Paths.get("/c/e")));
+        Assert.assertFalse(loader.exists(Paths.get("/x/y/z")));
+    }
+
+    @Test
+    public void testEachDirectoryIsReadOnce() throws Throwable {
+        DirectorySnapshot snapshot = new DirectorySnapshot();
+        Assert.assertTrue(snapshot.isRegularFile(FIXTURES_DIR.resolve("c/e/f")));
+        long reads = snapshot.getDirectoryReadCount();
+        Assert.assertTrue(snapshot.isRegularFile(FIXTURES_DIR.resolve("c/d")));
+        Assert.assertTrue(snapshot.isRegularFile(FIXTURES_DIR.resolve("a")));
+        Assert.assertFalse(snapshot.isRegularFile(FIXTURES_DIR.resolve("c/e/missing.js")));
+        Assert.assertEquals(reads, snapshot.getDirectoryReadCount());
+
+        // nothing below a missing directory is read
+        Assert.assertFalse(snapshot.isRegularFile(FIXTURES_DIR.resolve("node_modules/x/y/index.js")));
+        Assert.assertEquals(reads, snapshot.getDirectoryReadCount());
+    }
+
+    @Test
+    public void testCaseFollowsTheFileSystem() throws Throwable {
+        DirectorySnapshot snapshot = new DirectorySnapshot();
+        for (String path : new String[]{ "A", "C/d", "c/E/F", "c/D" }) {
+            Assert.assertEquals(path, Files.isRegularFile(FIXTURES_DIR.resolve(path)), snapshot.isRegularFile(FIXTURES_DIR.resolve(path)));
+        }
+        // names matching no entry even when case is ignored are still answered from the listing
+        long checks = snapshot.getFileCheckCount();
+        Assert.assertFalse(snapshot.isRegularFile(FIXTURES_DIR.resolve("Z")));
+        Assert.assertEquals(checks, snapshot.getFileCheckCount());
+    }
+
+    @Test
+    public void testEntriesAreCheckedOnce() throws Throwable {
+        DirectorySnapshot snapshot = new DirectorySnapshot();
+        Assert.assertFalse(snapshot.isRegularFile(FIXTURES_DIR.resolve("c")));
+        Assert.assertFalse(snapshot.isRegularFile(FIXTURES_DIR.resolve("c")));
+        Assert.assertTrue(snapshot.isRegularFile(FIXTURES_DIR.resolve("a")));
+        Assert.assertTrue(snapshot.isRegularFile(FIXTURES_DIR.resolve("a")));
+        Assert.assertEquals(2, snapshot.getFileCheckCount());
+    }
+}
@@ -0,0 +1,108 @@
+package com.shapesecurity.bandolier.es2018.loader;
+
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.ast.Program;
+import com.shapesecurity.shift.es2018.fuzzer.Fuzzer;
+import com.shapesecurity.shift.es2018.parser.Parser;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class DiskModuleCachingLoaderTest {
+
+    private static final String SOURCE = "import d, * as ns from './a.js';\n" +
+            "import { x as y, z } from './b.js';\n" +
+            "export * from './c.js';\n" +
+            "export { y as w };\n" +
+            "export default class extends d { constructor() { super(); } static get [ns.k]() {} set s(v) {} *g() { yield* 1; } }\n" +
+            "export async function f(a = 1, { b, c: [e, , ...g] }, ...rest) { for await (const q of a) {} return await a; }\n" +
+            "label: for (let i = 0; i < 10; ++i) { if (i % 2) continue label; else break; }\n" +
+            "const o = { a, 'b': 1e300, [z]: -0.5, ...rest, get g() { return this; }, async *m() {} };\n" +
+            "var t = tag`a${o}b\\u0041${`nested`}`, r = /a(b)\\1/gimsuy, n = 0x10, s = '\\u{1F600}';\n" +
+            "try { throw new Error((typeof o) ** 2); } catch (err) { } finally { o.a |= void 0; }\n" +
+            "switch (n) { case 1: default: case 2: do ; while (false) }\n" +
+            "((a, b) => a >>> b, async x => x)(...[1, 2]);\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCodecRoundTrip() throws Throwable {
+        Module module = Parser.parseModule(SOURCE);
+        Assert.assertEquals(module, ModuleCodec.decode(ModuleCodec.encode(module)));
+    }
+
+    @Test
+    public void testCodecRoundTripFuzzed() throws Throwable {
+        Random random = new Random(0);
+        int modules = 0;
+        while (modules < 200) {
+            Program program = Fuzzer.generate(random, 8);
+            if (program instanceof Module) {
+                Assert.assertEquals(program, ModuleCodec.decode(ModuleCodec.encode((Module) program)));
+                ++modules;
+            }
+        }
+    }
+
+    @Test
+    public void testCodecRejectsTruncatedData() throws Throwable {
+        byte[] data = ModuleCodec.encode(Parser.parseModule(SOURCE));
+        byte[] truncated = new byte[data.length / 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        try {
+            ModuleCodec.decode(truncated);
+            Assert.fail();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void testCacheIsSharedAcrossLoaders() throws Throwable {
+        Path cacheDirectory = this.folder.getRoot().toPath();
+        Map<Path, String> files = new HashMap<>();
+        files.put(Paths.get("/a.js"), SOURCE);
+        files.put(Paths.get("/b.js"), SOURCE);
+
+        DiskModuleCachingLoader cold = new DiskModuleCachingLoader(new MapLoader(files), cacheDirectory);
+        Module module = cold.loadModule(Paths.get("/a.js"));
+        Assert.assertEquals(module, cold.loadModule(Paths.get("/b.js")));
+        Assert.assertEquals(1, cold.getMissCount());
+        Assert.assertEquals(1, cold.getHitCount());
+
+        DiskModuleCachingLoader warm = new DiskModuleCachingLoader(new MapLoader(files), cacheDirectory);
+        Assert.assertEquals(module, warm.loadModule(Paths.get("/a.js")));
+        Assert.assertEquals(0, warm.getMissCount());
+        Assert.assertEquals(1, warm.getHitCount());
+    }
+
+    @Test
+    public void testCorruptEntriesAreReparsed() throws Throwable {
+        Path cacheDirectory = this.folder.getRoot().toPath();
+        Map<Path, String> files = new HashMap<>();
+        files.put(Paths.get("/a.js"), SOURCE);
+        DiskModuleCachingLoader loader = new DiskModuleCachingLoader(new MapLoader(files), cacheDirectory);
+        Module module = loader.loadModule(Paths.get("/a.js"));
+
+        Path entry;
+        try (Stream<Path> entries = Files.walk(loader.getDirectory())) {
+            entry = entries.filter(Files::isRegularFile).findFirst().get();
+        }
+        Files.write(entry, new byte[]{ 1, 2, 3 });
+
+        Assert.assertEquals(module, loader.loadModule(Paths.get("/a.js")));
+        Assert.assertEquals(2, loader.getMissCount());
+        Assert.assertEquals(module, loader.loadModule(Paths.get("/a.js")));
+        Assert.assertEquals(1, loader.getHitCount());
+    }
+}
@@ -0,0 +1,81 @@
+package com.shapesecurity.bandolier.es2018.loader;
+
+import com.shapesecurity.shift.es2018.ast.Module;
+import com.shapesecurity.shift.es2018.parser.JsError;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ModuleCachingLoaderTest {
+
+    @Test
+    public void testIdenticalSourcesShareModules() throws Throwable {
+        Map<Path, String> map = new HashMap<>();
+        map.put(Paths.get("/a.js"), "export var a = 1;");
+        map.put(Paths.get("/node_modules/a.js"), "export var a = 1;");
+        map.put(Paths.get("/b.js"), "export var b = 2;");
+        ModuleCachingLoader loader = new ModuleCachingLoader(new MapLoader(map));
+
+        Module a = loader.loadModule(Paths.get("/a.js"));
+        Assert.assertSame(a, loader.loadModule(Paths.get("/a.js")));
+        Assert.assertSame(a, loader.loadModule(Paths.get("/node_modules/a.js")));
+        Assert.assertNotSame(a, loader.loadModule(Paths.get("/b.js")));
+
+        Assert.assertEquals(2, loader.getCache().size());
+        Assert.assertEquals(2, loader.getCache().getHitCount());
+        Assert.assertEquals(2, loader.getCache().getMissCount());
+    }
+
+    @Test
+    public void testSharedCache() throws Throwable {
+        ModuleCache cache = new ModuleCache();
+        Map<Path, String> first = new HashMap<>();
+        first.put(Paths.get("/a.js"), "export var a = 1;");
+        Map<Path, String> second = new HashMap<>();
+        second.put(Paths.get("/other.js"), "export var a = 1;");
+
+        Module a = new ModuleCachingLoader(new MapLoader(first), cache).loadModule(Paths.get("/a.js"));
+        Assert.assertSame(a, new ModuleCachingLoader(new MapLoader(second), cache).loadModule(Paths.get("/other.js")));
+    }
+
+    @Test
+    public void testBoundedCacheEvictsLeastRecentlyUsed() throws Throwable {
+        String a = "export var a = 1;";
+        String b = "export var b = 2;";
+        String c = "export var c = 3;";
+        ModuleCache cache = new ModuleCache(2 * 2 * a.length());
+        Module moduleA = cache.parse(a);
+        Module moduleB = cache.parse(b);
+        Assert.assertSame(moduleA, cache.parse(a));
+        cache.parse(c);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(2 * 2 * a.length(), cache.getSizeInBytes());
+        Assert.assertSame(moduleA, cache.parse(a));
+        Assert.assertNotSame(moduleB, cache.parse(b));
+
+        // sources larger than the whole budget are parsed, but not kept
+        ModuleCache tiny = new ModuleCache(a.length());
+        Assert.assertNotSame(tiny.parse(a), tiny.parse(a));
+        Assert.assertEquals(0, tiny.size());
+    }
+
+    @Test
+    public void testParseFailuresAreNotCached() throws Throwable {
+        Map<Path, String> map = new HashMap<>();
+        map.put(Paths.get("/a.js"), "export var");
+        ModuleCachingLoader loader = new ModuleCachingLoader(new MapLoader(map));
+        for (int i = 0; i < 2; ++i) {
+            try {
+                loader.loadModule(Paths.get("/a.js"));
+                Assert.fail();
+            } catch (JsError ignored) {
+            }
+        }
+        Assert.assertEquals(0, loader.getCache().size());
+    }
+}
@@ -27,6 +27,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class NodeResolverTest {
 
@@ -69,4 +71,92 @@ public class NodeResolverTest {
 		assertEquals("/my/dir/index.js", this.resolver.resolve(Paths.get("/my"), "./dir"));
 
 	}
+
+	@Test
+	public void cacheTest() {
+		int[] probes = { 0 };
+		MockPathLoader files = new MockPathLoader();
+		IResourceLoader counting = new IResourceLoader() {
+			@Nonnull
+			@Override
+			public Boolean exists(@Nonnull Path path) {
+				++probes[0];
+				return files.exists(path);
+			}
+
+			@Nonnull
+			@Override
+			public String loadResource(@Nonnull Path path) throws IOException {
+				return files.loadResource(path);
+			}
+		};
+		NodeResolverCache cache = new NodeResolverCache();
+
+		NodeResolver first = new NodeResolver(counting, cache);
+		assertEquals("/node_modules/g.js", first.resolve(Paths.get("/foo/bar"), "g"));
+		int probesAfterFirst = probes[0];
+		assertEquals("/node_modules/g.js", first.resolve(Paths.get("/foo/bar"), "g"));
+		assertEquals(probesAfterFirst, probes[0]);
+
+		// a sibling directory walks the same parents, which are already known not to contain g
+		NodeResolver second = new NodeResolver(counting, cache);
+		assertEquals("/node_modules/g.js", second.resolve(Paths.get("/foo/baz"), "g"));
+		assertEquals(probesAfterFirst + 6, probes[0]);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertTrue(cache.getNegativeCount() > 0);
+	}
+
+	@Test
+	public void uncachedTest() {
+		// without a cache, nothing is remembered between resolutions
+		Map<Path, String> files = new HashMap<>();
+		NodeResolver resolver = new NodeResolver(new MapLoader(files));
+		assertFalse(resolver.getCache().isJust());
+		assertEquals("g", resolver.resolve(Paths.get("/foo"), "g"));
+		files.put(Paths.get("/node_modules/g.js"), "");
+		assertEquals("/node_modules/g.js", resolver.resolve(Paths.get("/foo"), "g"));
+	}
+
+	@Test
+	public void manifestTest() {
+		int[] loads = { 0 };
+		Map<Path, String> files = new HashMap<>();
+		files.put(Paths.get("/node_modules/pkg/package.json"), "{\"name\": \"pkg\", \"scripts\": {\"main\": \"no\"}, \"main\": \"lib/main\"}");
+		files.put(Paths.get("/node_modules/pkg/lib/main.js"), "");
+		MapLoader map = new MapLoader(files);
+		IResourceLoader counting = new IResourceLoader() {
+			@Nonnull
+			@Override
+			public Boolean exists(@Nonnull Path path) {
+				return map.exists(path);
+			}
+
+			@Nonnull
+			@Override
+			public String loadResource(@Nonnull Path path) throws IOException {
+				++loads[0];
+				return map.loadResource(path);
+			}
+		};
+		NodeResolverCache cache = new NodeResolverCache();
+		assertEquals("/node_modules/pkg/lib/main.js", new NodeResolver(counting, cache).resolve(Paths.get("/a"), "pkg"));
+		assertEquals("/node_modules/pkg/lib/main.js", new NodeResolver(counting, cache).resolve(Paths.get("/b"), "pkg"));
+		assertEquals(1, loads[0]);
+		assertEquals(1, cache.getManifestCount());
+	}
+
+	@Test
+	public void packageManifestTest() {
+		assertEquals("a.js", PackageManifest.parse("{\"main\": \"a.js\"}").main.fromJust());
+		assertEquals("a.js", PackageManifest.parse("{\"dependencies\": {\"main\": 1}, \"main\": \"a.js\"}").main.fromJust());
+		// nothing after the main field is read
+		assertEquals("a.js", PackageManifest.parse("{\"main\": \"a.js\", \"version\": ").main.fromJust());
+		assertTrue(PackageManifest.parse("{\"main\": null}").main.isNothing());
+		assertTrue(PackageManifest.parse("{\"name\": \"x\"}").main.isNothing());
+		assertTrue(PackageManifest.parse("[]").main.isNothing());
+		assertTrue(PackageManifest.parse("{").main.isNothing());
+	}
 }
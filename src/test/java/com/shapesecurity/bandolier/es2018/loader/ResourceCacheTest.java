@@ -0,0 +1,165 @@
+package com.shapesecurity.bandolier.es2018.loader;
+
+import com.shapesecurity.functional.data.Maybe;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ResourceCacheTest {
+
+    private static final class CountingLoader extends CachedResourceLoader {
+        private final Map<Path, String> files;
+        int backendLoads = 0;
+
+        CountingLoader(Map<Path, String> files, ResourceCache cache) {
+            super(cache);
+            this.files = files;
+        }
+
+        @Nonnull
+        @Override
+        public Boolean existsBackend(@Nonnull Path path) {
+            return this.files.containsKey(path);
+        }
+
+        @Nonnull
+        @Override
+        public String loadResourceBackend(@Nonnull Path path) throws IOException {
+            ++this.backendLoads;
+            return this.files.get(path);
+        }
+    }
+
+    // every entry is 4 characters, so 8 bytes
+    private static final long ENTRY_SIZE = 8;
+
+    @Test
+    public void testLruEviction() throws Throwable {
+        ResourceCache cache = new ResourceCache(2 * ENTRY_SIZE, ResourceCache.EvictionPolicy.LRU);
+        cache.put(Paths.get("/a"), "aaaa");
+        cache.put(Paths.get("/b"), "bbbb");
+        Assert.assertEquals("aaaa", cache.get(Paths.get("/a")).fromJust());
+        cache.put(Paths.get("/c"), "cccc");
+        Assert.assertTrue(cache.containsKey(Paths.get("/a")));
+        Assert.assertFalse(cache.containsKey(Paths.get("/b")));
+        Assert.assertTrue(cache.containsKey(Paths.get("/c")));
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(2 * ENTRY_SIZE, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void testLfuEviction() throws Throwable {
+        ResourceCache cache = new ResourceCache(2 * ENTRY_SIZE, ResourceCache.EvictionPolicy.LFU);
+        cache.put(Paths.get("/a"), "aaaa");
+        cache.put(Paths.get("/b"), "bbbb");
+        cache.get(Paths.get("/a"));
+        cache.get(Paths.get("/a"));
+        cache.get(Paths.get("/b"));
+        cache.put(Paths.get("/c"), "cccc");
+        Assert.assertTrue(cache.containsKey(Paths.get("/a")));
+        Assert.assertFalse(cache.containsKey(Paths.get("/b")));
+        Assert.assertTrue(cache.containsKey(Paths.get("/c")));
+    }
+
+    @Test
+    public void testManyLookups() throws Throwable {
+        // more lookups than are queued before they are applied to the eviction order
+        for (ResourceCache.EvictionPolicy policy : ResourceCache.EvictionPolicy.values()) {
+            ResourceCache cache = new ResourceCache(2 * ENTRY_SIZE, policy);
+            cache.put(Paths.get("/a"), "aaaa");
+            cache.put(Paths.get("/b"), "bbbb");
+            for (int i = 0; i < 1000; ++i) {
+                cache.get(Paths.get(i % 3 == 0 ? "/a" : "/b"));
+            }
+            cache.get(Paths.get("/b"));
+            cache.put(Paths.get("/c"), "cccc");
+            Assert.assertFalse(cache.containsKey(Paths.get("/a")));
+            Assert.assertTrue(cache.containsKey(Paths.get("/b")));
+            cache.invalidate(Paths.get("/b"));
+            Assert.assertEquals(ENTRY_SIZE, cache.getSizeInBytes());
+        }
+    }
+
+    @Test
+    public void testOversizedResourcesAreNotRetained() throws Throwable {
+        ResourceCache cache = new ResourceCache(ENTRY_SIZE, ResourceCache.EvictionPolicy.LRU);
+        cache.put(Paths.get("/a"), "aaaa");
+        cache.put(Paths.get("/big"), "too large to fit");
+        Assert.assertTrue(cache.containsKey(Paths.get("/a")));
+        Assert.assertFalse(cache.containsKey(Paths.get("/big")));
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testLoaderCounters() throws Throwable {
+        Map<Path, String> files = new HashMap<>();
+        files.put(Paths.get("/a"), "aaaa");
+        files.put(Paths.get("/b"), "bbbb");
+        ResourceCache cache = new ResourceCache(ENTRY_SIZE, ResourceCache.EvictionPolicy.LRU);
+        CountingLoader loader = new CountingLoader(files, cache);
+
+        Assert.assertEquals("aaaa", loader.loadResource(Paths.get("/a")));
+        Assert.assertEquals("aaaa", loader.loadResource(Paths.get("/a")));
+        Assert.assertEquals(1, loader.backendLoads);
+        Assert.assertEquals("bbbb", loader.loadResource(Paths.get("/b")));
+        Assert.assertEquals("aaaa", loader.loadResource(Paths.get("/a")));
+        Assert.assertEquals(3, loader.backendLoads);
+
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+        Assert.assertEquals(2, cache.getEvictionCount());
+        Assert.assertTrue(loader.exists(Paths.get("/b")));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Throwable {
+        for (ResourceCache cache : new ResourceCache[]{ new ResourceCache(), new ResourceCache(10 * ENTRY_SIZE, ResourceCache.EvictionPolicy.LRU), new ResourceCache(10 * ENTRY_SIZE, ResourceCache.EvictionPolicy.LFU) }) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int t = 0; t < 4; ++t) {
+                    int seed = t;
+                    tasks.add(executor.submit(() -> {
+                        for (int i = 0; i < 10000; ++i) {
+                            Path path = Paths.get("/" + (i * 7 + seed) % 20);
+                            Maybe<String> cached = cache.get(path);
+                            if (cached.isJust()) {
+                                Assert.assertEquals(path.toString().substring(1), cached.fromJust().trim());
+                            } else {
+                                cache.put(path, String.format("%-4s", path.toString().substring(1)));
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            Assert.assertTrue(cache.getSizeInBytes() <= cache.getMaxBytes());
+            Assert.assertEquals(cache.size() * ENTRY_SIZE, cache.getSizeInBytes());
+            Assert.assertEquals(40000, cache.getHitCount() + cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testInvalidate() throws Throwable {
+        ResourceCache cache = new ResourceCache();
+        cache.put(Paths.get("/a"), "aaaa");
+        cache.invalidate(Paths.get("/a"));
+        Assert.assertFalse(cache.containsKey(Paths.get("/a")));
+        Assert.assertEquals(0, cache.getSizeInBytes());
+    }
+}